@@ -22,6 +22,9 @@ app.add_middleware(
 # --- CONFIGURATION ---
 FACES_DIR = os.getenv("FACES_DIR", "faces_index")
 PHOTO_DIR = os.getenv("PHOTO_DIR", "/app/photo")
+# The backend keeps the face index in its own segment files. Only turn this on to keep
+# feeding the legacy per-face .npy layout used by /match-face.
+STORE_NPY = os.getenv("STORE_NPY", "false").lower() == "true"
 
 # Ensure index directory exists
 if not os.path.exists(FACES_DIR):
@@ -120,23 +123,59 @@ async def index_face(
         if not encodings:
             return JSONResponse(status_code=400, content={"error": "No faces found"})
 
-        # Save encodings
-        save_dir = os.path.join(FACES_DIR, f"event_{event_id}")
-        if not os.path.exists(save_dir):
-            os.makedirs(save_dir)
-            
-        saved_paths = []
-        for i, encoding in enumerate(encodings):
-            filename = f"photo_{photo_id}_face_{i}.npy"
-            path = os.path.join(save_dir, filename)
-            np.save(path, encoding)
-            saved_paths.append(path)
+        if STORE_NPY:
+            save_dir = os.path.join(FACES_DIR, f"event_{event_id}")
+            if not os.path.exists(save_dir):
+                os.makedirs(save_dir)
 
-        return {"success": True, "faces_detected": len(encodings)}
+            for i, encoding in enumerate(encodings):
+                filename = f"photo_{photo_id}_face_{i}.npy"
+                np.save(os.path.join(save_dir, filename), encoding)
+
+        # The backend stores the vectors in its own per-event segment file
+        return {
+            "success": True,
+            "faces_detected": len(encodings),
+            "encodings": [encoding.tolist() for encoding in encodings]
+        }
 
     except Exception as e:
         raise HTTPException(status_code=500, detail=str(e))
 
+@app.post("/index-faces")
+async def index_faces(
+    event_id: int = Form(...),
+    photo_ids: List[int] = Form(...),
+    images: List[UploadFile] = File(...)
+):
+    """
+    Batch version of /index-face: photo_ids[i] belongs to images[i].
+    A photo without faces gets an empty encodings list; a photo that fails gets an error instead,
+    so one bad image does not fail the whole batch.
+    """
+    if len(photo_ids) != len(images):
+        raise HTTPException(status_code=400, detail="photo_ids and images must have the same length")
+
+    results = []
+    for photo_id, image in zip(photo_ids, images):
+        try:
+            content = await image.read()
+            img_array = load_image_into_numpy_array(content)
+            locations = face_recognition.face_locations(img_array)
+            encodings = face_recognition.face_encodings(img_array, locations)
+            results.append({
+                "photo_id": photo_id,
+                "faces_detected": len(encodings),
+                "encodings": [encoding.tolist() for encoding in encodings],
+                # (top, right, bottom, left) per face, in the same order as encodings
+                "locations": [list(location) for location in locations]
+            })
+        except Exception as e:
+            print(f"Failed to index photo {photo_id} of event {event_id}: {e}")
+            results.append({"photo_id": photo_id, "error": str(e)})
+
+    return {"results": results}
+
 @app.post("/match-face")
 async def match_face(
     event_id: str = Form(...),
@@ -206,6 +245,41 @@ async def match_face(
     except Exception as e:
         raise HTTPException(status_code=500, detail=str(e))
 
+@app.post("/embed-face")
+async def embed_face(
+    image: UploadFile = File(...),
+    upsample: int = Form(0)
+):
+    """
+    Turns a guest selfie into a single face encoding.
+    Matching against the event index happens in the Spring Boot backend.
+    With upsample > 0 a selfie without a face is searched again at that many upsamplings.
+    """
+    try:
+        content = await image.read()
+        img_array = load_image_into_numpy_array(content)
+
+        if img_array is None or img_array.size == 0:
+            return JSONResponse(status_code=400, content={"error": "Invalid image file"})
+
+        # The backend sends a downscaled selfie and retries at a higher resolution when no face is found here;
+        # a selfie it could not give more pixels comes back with upsample set instead
+        encodings = face_recognition.face_encodings(img_array)
+
+        if not encodings and upsample > 0:
+            # Upsampling helps with smaller faces in the frame
+            locations = face_recognition.face_locations(img_array, number_of_times_to_upsample=upsample)
+            if locations:
+                encodings = face_recognition.face_encodings(img_array, locations, num_jitters=1)
+
+        if not encodings:
+            return JSONResponse(status_code=400, content={"error": "No face detected in selfie. Please ensure good lighting."})
+
+        return {"faces_detected": len(encodings), "encoding": encodings[0].tolist()}
+
+    except Exception as e:
+        raise HTTPException(status_code=500, detail=str(e))
+
 @app.delete("/delete-event-faces/{event_id}")
 def delete_event_faces(event_id: int):
     event_dir = os.path.join(FACES_DIR, f"event_{event_id}")
@@ -103,8 +103,9 @@ public class AdminController {
     }
 
     private final com.eventphoto.service.QrCodeService qrCodeService;
-    private final com.eventphoto.service.GoogleDriveService googleDriveService;
+    private final com.eventphoto.service.PhotoService photoService;
     private final com.eventphoto.service.FaceRecognitionService faceRecognitionService;
+    private final com.eventphoto.service.IndexingQueue indexingQueue;
 
     @GetMapping(value = "/events/{eventId}/qr", produces = org.springframework.http.MediaType.IMAGE_PNG_VALUE)
     public ResponseEntity<byte[]> getEventQrCode(@PathVariable Integer eventId) {
@@ -120,49 +121,50 @@ public class AdminController {
     }
 
     @PostMapping("/events/{eventId}/reindex")
-    public ResponseEntity<String> reindexEventPhotos(@PathVariable Integer eventId) {
+    public ResponseEntity<String> reindexEventPhotos(@PathVariable Integer eventId,
+                                                     @RequestParam(defaultValue = "false") boolean recompute) {
         try {
             System.out.println("Starting re-indexing for event: " + eventId);
             List<com.eventphoto.entity.Photo> photos = photoRepository.findByEventId(eventId);
             System.out.println("Found " + photos.size() + " photos for event " + eventId);
 
-            int count = 0;
-            for (com.eventphoto.entity.Photo photo : photos) {
-                try {
-                    System.out.println(
-                            "Downloading photo causing ID: " + photo.getId() + " FileId: " + photo.getDriveFileId());
-                    byte[] imageBytes = googleDriveService.downloadFile(photo.getDriveFileId());
-                    System.out.println("Download success, bytes: " + (imageBytes != null ? imageBytes.length : "null"));
-
-                    faceRecognitionService.indexFace(eventId, photo.getId(), imageBytes);
-                    System.out.println("Index request sent for photo: " + photo.getId());
-                    count++;
-                } catch (Exception e) {
-                    System.err.println("Failed to reindex photo " + photo.getId() + ": " + e.getMessage());
-                }
-            }
-            return ResponseEntity.ok("Re-indexed " + count + " photos for event " + eventId);
+            // Stored embeddings rebuild the index without downloading or re-detecting anything
+            java.util.Set<Integer> restored = recompute
+                    ? java.util.Set.of()
+                    : faceRecognitionService.rebuildIndexFromDatabase(eventId);
+
+            // The rest is queued; workers download each photo from Drive when its job runs. Staged photos are
+            // queued by their upload once they reach Drive.
+            int count = indexingQueue.enqueue(photos.stream()
+                    .filter(photo -> photo.getStorageStatus()
+                            != com.eventphoto.entity.Photo.StorageStatus.PENDING_STORAGE)
+                    .map(com.eventphoto.entity.Photo::getId)
+                    .filter(id -> !restored.contains(id))
+                    .collect(java.util.stream.Collectors.toList()));
+            return ResponseEntity.ok("Restored " + restored.size() + " photos of event " + eventId
+                    + " from stored embeddings, queued " + count + " for re-indexing");
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body("Failed to reindex: " + e.getMessage());
         }
     }
 
-    @GetMapping("/events/{eventId}/photos")
+    // Without cursor or limit the listing keeps its original shape: a bare array of every photo
+    @GetMapping(value = "/events/{eventId}/photos", params = {"!cursor", "!limit"})
     public ResponseEntity<List<com.eventphoto.dto.PhotoResponse>> getEventPhotos(@PathVariable Integer eventId) {
-        List<com.eventphoto.dto.PhotoResponse> photos = photoRepository.findByEventId(eventId)
-                .stream()
-                .map(photo -> com.eventphoto.dto.PhotoResponse.builder()
-                        .id(photo.getId())
-                        .eventId(photo.getEvent().getId())
-                        .downloadUrl(googleDriveService.getTemporaryDownloadLink(photo.getDriveFileId()))
-                        .uploadedBy(photo.getUploadedBy() != null ? photo.getUploadedBy().getName() : "Unknown")
-                        .indexed(photo.getIndexed())
-                        .createdAt(photo.getCreatedAt())
-                        .build())
-                .collect(java.util.stream.Collectors.toList());
-        System.out.println("Returning " + photos.size() + " photos for event " + eventId);
-        return ResponseEntity.ok(photos);
+        return ResponseEntity.ok(photoService.getEventPhotos(eventId));
+    }
+
+    @GetMapping("/events/{eventId}/photos")
+    public ResponseEntity<com.eventphoto.dto.PhotoPageResponse> getEventPhotoPage(
+            @PathVariable Integer eventId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(photoService.getEventPhotoPage(eventId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @DeleteMapping("/events/{eventId}")
@@ -2,6 +2,7 @@ package com.eventphoto.controller;
 
 import com.eventphoto.entity.GoogleToken;
 import com.eventphoto.repository.GoogleTokenRepository;
+import com.eventphoto.service.DriveClientHolder;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
 import com.google.api.client.http.javanet.NetHttpTransport;
@@ -22,6 +23,7 @@ import java.util.Collections;
 public class GoogleAuthController {
 
     private final GoogleTokenRepository tokenRepository;
+    private final DriveClientHolder driveClientHolder;
 
     @Value("${google.drive.oauth.client-id}")
     private String clientId;
@@ -76,6 +78,7 @@ public class GoogleAuthController {
 
         token.setExpiryTime(LocalDateTime.now().plusSeconds(response.getExpiresInSeconds()));
         tokenRepository.save(token);
+        driveClientHolder.tokenUpdated();
 
         return ResponseEntity.ok("Success! Google Drive connected. You can close this window.");
     }
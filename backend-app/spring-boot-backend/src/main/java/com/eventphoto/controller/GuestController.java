@@ -1,15 +1,32 @@
 package com.eventphoto.controller;
 
+import com.eventphoto.dto.EventResponse;
+import com.eventphoto.dto.MatchPageResponse;
+import com.eventphoto.dto.MatchSubscriptionResponse;
 import com.eventphoto.dto.PhotoResponse;
+import com.eventphoto.face.FaceMatch;
+import com.eventphoto.face.MatchResultCache;
+import com.eventphoto.service.EventService;
 import com.eventphoto.service.PhotoService;
 import com.eventphoto.service.FaceRecognitionService;
+import com.eventphoto.service.FaceServiceUnavailableException;
+import com.eventphoto.service.MatchSubscriptionService;
+import com.eventphoto.service.SubscriptionCapacityException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/guest")
@@ -18,20 +35,157 @@ public class GuestController {
 
     private final PhotoService photoService;
     private final FaceRecognitionService faceRecognitionService;
+    private final EventService eventService;
+    private final MatchSubscriptionService matchSubscriptionService;
 
     @PostMapping("/events/{eventId}/match-face")
     public ResponseEntity<List<PhotoResponse>> matchFace(
             @PathVariable Integer eventId,
             @RequestParam("file") MultipartFile file) throws IOException {
         
-        List<Integer> matchedPhotoIds = faceRecognitionService.matchFace(eventId, file.getBytes());
-        List<PhotoResponse> matchedPhotos = photoService.getMatchedPhotos(eventId, matchedPhotoIds);
+        List<Integer> matchedPhotoIds;
+        try {
+            matchedPhotoIds = faceRecognitionService.matchFace(eventId, file.getBytes());
+        } catch (FaceServiceUnavailableException e) {
+            return unavailable(e);
+        }
+        List<PhotoResponse> matchedPhotos = photoService.getPhotosInOrder(matchedPhotoIds);
         
         return ResponseEntity.ok(matchedPhotos);
     }
 
+    /**
+     * Ranked matches with distances, one page at a time. Further pages come from the cached result via
+     * {@link #getMatchPage} without uploading the selfie again.
+     */
+    @PostMapping("/events/{eventId}/matches")
+    public ResponseEntity<MatchPageResponse> rankMatches(
+            @PathVariable Integer eventId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "limit", defaultValue = "30") int limit) throws IOException {
+
+        byte[] selfie = file.getBytes();
+        String matchId = MatchResultCache.hash(selfie);
+        List<FaceMatch> matches;
+        try {
+            matches = faceRecognitionService.matchFaceRanked(eventId, matchId, selfie);
+        } catch (FaceServiceUnavailableException e) {
+            return unavailable(e);
+        }
+
+        return ResponseEntity.ok(photoService.getMatchPage(matchId, matches, null, limit));
+    }
+
+    @GetMapping("/events/{eventId}/matches/{matchId}")
+    public ResponseEntity<MatchPageResponse> getMatchPage(
+            @PathVariable Integer eventId,
+            @PathVariable String matchId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "30") int limit) {
+
+        List<FaceMatch> matches = faceRecognitionService.getCachedMatches(eventId, matchId);
+        if (matches == null) {
+            // Expired; the client has to post the selfie again
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        try {
+            return ResponseEntity.ok(photoService.getMatchPage(matchId, matches, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * One selfie against several events at once; searches every active event when no event ids are given. Ids of
+     * events that are not active are ignored, so guests cannot search archived events or load their indexes.
+     */
+    @PostMapping("/match-face")
+    public ResponseEntity<List<PhotoResponse>> matchFaceAcrossEvents(
+            @RequestParam(value = "eventIds", required = false) List<Integer> eventIds,
+            @RequestParam("file") MultipartFile file) throws IOException {
+
+        List<Integer> activeEventIds = eventService.getAllActiveEvents().stream().map(EventResponse::getId).toList();
+        if (eventIds == null || eventIds.isEmpty()) {
+            eventIds = activeEventIds;
+        } else {
+            Set<Integer> active = new HashSet<>(activeEventIds);
+            eventIds = eventIds.stream().distinct().filter(active::contains).toList();
+            if (eventIds.isEmpty()) {
+                return ResponseEntity.ok(List.of());
+            }
+        }
+        Map<Integer, List<Integer>> matchedPhotoIds;
+        try {
+            matchedPhotoIds = faceRecognitionService.matchFaceAcrossEvents(eventIds, file.getBytes());
+        } catch (FaceServiceUnavailableException e) {
+            return unavailable(e);
+        }
+        List<Integer> photoIds = matchedPhotoIds.values().stream().flatMap(List::stream).toList();
+
+        return ResponseEntity.ok(photoService.getPhotosInOrder(photoIds));
+    }
+
+    /**
+     * Registers the selfie for live matches; new photos that match are pushed to the subscription's stream. Only
+     * active events take subscriptions, so guests cannot park selfies on made-up or archived event ids.
+     */
+    @PostMapping("/events/{eventId}/subscriptions")
+    public ResponseEntity<MatchSubscriptionResponse> subscribe(
+            @PathVariable Integer eventId,
+            @RequestParam("file") MultipartFile file) throws IOException {
+
+        if (!eventService.isActive(eventId)) {
+            return ResponseEntity.notFound().build();
+        }
+        String subscriptionId;
+        try {
+            subscriptionId = matchSubscriptionService.subscribe(eventId, file.getBytes());
+        } catch (FaceServiceUnavailableException e) {
+            return unavailable(e);
+        } catch (SubscriptionCapacityException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .build();
+        }
+        if (subscriptionId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(MatchSubscriptionResponse.builder()
+                .subscriptionId(subscriptionId)
+                .eventId(eventId)
+                .streamUrl(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/guest/events/{eventId}/subscriptions/{subscriptionId}/stream")
+                        .buildAndExpand(eventId, subscriptionId)
+                        .toUriString())
+                .build());
+    }
+
+    @GetMapping(value = "/events/{eventId}/subscriptions/{subscriptionId}/stream",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamMatches(
+            @PathVariable Integer eventId,
+            @PathVariable String subscriptionId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+
+        SseEmitter emitter = matchSubscriptionService.connect(eventId, subscriptionId, lastEventId);
+        return emitter != null ? ResponseEntity.ok(emitter) : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/events/{eventId}/subscriptions/{subscriptionId}")
+    public ResponseEntity<Void> unsubscribe(@PathVariable Integer eventId, @PathVariable String subscriptionId) {
+        return matchSubscriptionService.unsubscribe(eventId, subscriptionId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
     @GetMapping("/events/{eventId}")
     public ResponseEntity<String> getEventInfo(@PathVariable Integer eventId) {
         return ResponseEntity.ok("Event " + eventId + " is ready for guest face scanning");
     }
+
+    private static <T> ResponseEntity<T> unavailable(FaceServiceUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .build();
+    }
 }
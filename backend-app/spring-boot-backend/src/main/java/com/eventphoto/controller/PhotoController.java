@@ -1,7 +1,11 @@
 package com.eventphoto.controller;
 
-import com.eventphoto.service.GoogleDriveService;
+import com.eventphoto.service.PhotoFileCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -11,21 +15,36 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/photo")
 @RequiredArgsConstructor
 public class PhotoController {
 
-    private final GoogleDriveService googleDriveService;
+    private final PhotoFileCache photoFileCache;
 
+    // Drive file ids never change content, so clients and CDNs may keep them for long
+    @Value("${photo-cache.max-age-seconds:2592000}")
+    private long maxAgeSeconds;
+
+    /**
+     * Streams a photo from the local disk cache. Spring answers If-None-Match with 304 and Range with 206 for
+     * resource bodies, so browsers revalidate with the ETag and resume or seek without a full download.
+     */
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<byte[]> downloadPhoto(@PathVariable String fileId) throws IOException {
-        byte[] data = googleDriveService.downloadFile(fileId);
+    public ResponseEntity<Resource> downloadPhoto(@PathVariable String fileId) throws IOException {
+        if (!PhotoFileCache.isValidFileId(fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        PhotoFileCache.CachedFile file = photoFileCache.get(fileId);
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"photo_" + fileId + ".jpg\"")
                 .contentType(MediaType.IMAGE_JPEG)
-                .body(data);
+                .eTag(file.etag())
+                .lastModified(file.lastModified())
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().immutable())
+                .body(new FileSystemResource(file.path()));
     }
 }
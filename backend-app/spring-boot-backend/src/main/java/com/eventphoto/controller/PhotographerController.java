@@ -1,15 +1,22 @@
 package com.eventphoto.controller;
 
+import com.eventphoto.dto.BulkUploadResponse;
+import com.eventphoto.dto.PhotoPageResponse;
 import com.eventphoto.dto.PhotoResponse;
 import com.eventphoto.dto.PhotographerStatsResponse;
 import com.eventphoto.dto.EventResponse;
 import com.eventphoto.repository.EventRepository;
+import com.eventphoto.service.BulkUploadService;
 import com.eventphoto.service.PhotoService;
+import com.eventphoto.service.UploadCapacityException;
+import com.eventphoto.service.UploadStagingService;
 import com.eventphoto.service.EventService;
 import com.eventphoto.repository.UserRepository;
 import com.eventphoto.entity.User;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -28,6 +35,8 @@ public class PhotographerController {
     private final EventService eventService;
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
+    private final BulkUploadService bulkUploadService;
+    private final UploadStagingService uploadStagingService;
 
     @GetMapping("/stats")
     public ResponseEntity<PhotographerStatsResponse> getPhotographerStats() {
@@ -58,14 +67,70 @@ public class PhotographerController {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         Integer photographerId = extractPhotographerIdFromAuth(authentication);
 
-        PhotoResponse response = photoService.uploadPhoto(eventId, photographerId, file);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        // With staging on, the photo is accepted once it is on local disk and reaches Drive in the background
+        if (uploadStagingService.isEnabled()) {
+            PhotoResponse response = uploadStagingService.stage(eventId, photographerId, file);
+            return ResponseEntity.status(Boolean.TRUE.equals(response.getDuplicate()) ? HttpStatus.OK
+                    : HttpStatus.ACCEPTED).body(response);
+        }
+        PhotoResponse response;
+        try {
+            response = photoService.uploadPhoto(eventId, photographerId, file);
+        } catch (UploadCapacityException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .build();
+        }
+        // A file the event already has answers with the existing photo
+        return ResponseEntity.status(Boolean.TRUE.equals(response.getDuplicate()) ? HttpStatus.OK
+                : HttpStatus.CREATED).body(response);
     }
 
-    @GetMapping("/events/{eventId}/photos")
+    /**
+     * Uploads many photos in one multipart request; each file is reported as CREATED or FAILED.
+     */
+    @PostMapping(value = "/events/{eventId}/photos/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BulkUploadResponse> uploadPhotos(
+            @PathVariable Integer eventId,
+            @RequestParam("files") List<MultipartFile> files) {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Integer photographerId = extractPhotographerIdFromAuth(authentication);
+
+        return ResponseEntity.ok(bulkUploadService.uploadFiles(eventId, photographerId, files));
+    }
+
+    /**
+     * Uploads the images in a ZIP archive streamed as the request body, so a whole memory card can be sent without
+     * the multipart size limit.
+     */
+    @PostMapping(value = "/events/{eventId}/photos/bulk", consumes = "application/zip")
+    public ResponseEntity<BulkUploadResponse> uploadZip(
+            @PathVariable Integer eventId,
+            jakarta.servlet.http.HttpServletRequest request) throws IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Integer photographerId = extractPhotographerIdFromAuth(authentication);
+
+        return ResponseEntity.ok(bulkUploadService.uploadZip(eventId, photographerId, request.getInputStream()));
+    }
+
+    // Without cursor or limit the listing keeps its original shape: a bare array of every photo
+    @GetMapping(value = "/events/{eventId}/photos", params = {"!cursor", "!limit"})
     public ResponseEntity<List<PhotoResponse>> getEventPhotos(@PathVariable Integer eventId) {
-        List<PhotoResponse> photos = photoService.getEventPhotos(eventId);
-        return ResponseEntity.ok(photos);
+        return ResponseEntity.ok(photoService.getEventPhotos(eventId));
+    }
+
+    @GetMapping("/events/{eventId}/photos")
+    public ResponseEntity<PhotoPageResponse> getEventPhotoPage(
+            @PathVariable Integer eventId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(photoService.getEventPhotoPage(eventId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     private Integer extractPhotographerIdFromAuth(Authentication authentication) {
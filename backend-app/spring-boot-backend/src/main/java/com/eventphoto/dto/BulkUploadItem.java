@@ -0,0 +1,20 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkUploadItem {
+    private String name;
+    // CREATED, DUPLICATE of a photo the event already has, FAILED, or SKIPPED for ZIP entries that are not images
+    private String status;
+    // Set when CREATED, or the existing photo when DUPLICATE
+    private PhotoResponse photo;
+    // Set when FAILED or SKIPPED
+    private String error;
+}
@@ -0,0 +1,21 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkUploadResponse {
+    private Integer eventId;
+    private Integer created;
+    private Integer duplicates;
+    private Integer failed;
+    // In upload order
+    private List<BulkUploadItem> items;
+}
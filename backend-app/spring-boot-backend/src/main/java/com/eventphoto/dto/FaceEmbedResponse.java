@@ -0,0 +1,14 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FaceEmbedResponse {
+    @com.fasterxml.jackson.annotation.JsonProperty("faces_detected")
+    private Integer facesDetected;
+    private float[] encoding;
+}
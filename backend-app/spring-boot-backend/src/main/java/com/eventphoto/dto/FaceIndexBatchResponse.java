@@ -0,0 +1,28 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FaceIndexBatchResponse {
+    private List<Result> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Result {
+        @com.fasterxml.jackson.annotation.JsonProperty("photo_id")
+        private Integer photoId;
+        @com.fasterxml.jackson.annotation.JsonProperty("faces_detected")
+        private Integer facesDetected;
+        private List<float[]> encodings;
+        // top, right, bottom, left of each face, in the order of encodings
+        private List<int[]> locations;
+        private String error;
+    }
+}
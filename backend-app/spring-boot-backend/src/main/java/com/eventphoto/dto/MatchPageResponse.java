@@ -0,0 +1,21 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MatchPageResponse {
+    // Pass back to GET /guest/events/{eventId}/matches/{matchId} for further pages
+    private String matchId;
+    private Integer total;
+    private List<PhotoMatchResponse> items;
+    // Null on the last page
+    private String nextCursor;
+}
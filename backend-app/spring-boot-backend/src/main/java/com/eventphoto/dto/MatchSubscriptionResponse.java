@@ -0,0 +1,17 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MatchSubscriptionResponse {
+    private String subscriptionId;
+    private Integer eventId;
+    // Open with EventSource; each "match" event carries a PhotoMatchResponse
+    private String streamUrl;
+}
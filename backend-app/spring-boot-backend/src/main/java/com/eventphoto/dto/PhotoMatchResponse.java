@@ -0,0 +1,19 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PhotoMatchResponse {
+    private PhotoResponse photo;
+    // Euclidean distance between the selfie and the closest face in the photo
+    private Float distance;
+    // 1 at distance 0, falling to 0 at the match tolerance
+    private Float score;
+    private Integer faceNumber;
+}
@@ -0,0 +1,19 @@
+package com.eventphoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PhotoPageResponse {
+    // Oldest upload first
+    private List<PhotoResponse> items;
+    // Pass back as cursor for the next page; null on the last page
+    private String nextCursor;
+}
@@ -15,6 +15,16 @@ public class PhotoResponse {
     private Integer id;
     private Integer eventId;
     private String downloadUrl;
+    // Gallery tile, preview and full-screen sizes; the original's URL when there is no smaller copy
+    private String smallUrl;
+    private String mediumUrl;
+    private String fullUrl;
+    // PENDING_STORAGE while a staged upload is on its way to Drive; the URLs are null until then
+    private String storageStatus;
+    // Set on later frames of a burst; they only match guests who are not in the representative photo
+    private Integer representativePhotoId;
+    // True when the upload was a file the event already had; the existing photo is returned
+    private Boolean duplicate;
     private String uploadedBy;
     private Boolean indexed;
     private LocalDateTime createdAt;
@@ -5,11 +5,18 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
 
 import java.time.LocalDateTime;
 
+/**
+ * One detected face. The vector is packed as little-endian float32, the same layout as the backend's segment files,
+ * so a whole event can be read back without touching Drive or the face service.
+ */
 @Entity
-@Table(name = "face_embeddings")
+@Table(name = "face_embeddings", indexes = @Index(name = "idx_face_embeddings_event_photo",
+        columnList = "event_id, photo_id, face_number"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,8 +27,35 @@ public class FaceEmbedding {
 
     @ManyToOne
     @JoinColumn(name = "photo_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private Photo photo;
 
+    // Denormalized from the photo so an event's vectors load with one indexed range scan
+    @ManyToOne
+    @JoinColumn(name = "event_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Event event;
+
+    @Column(name = "face_number", nullable = false)
+    private Integer faceNumber;
+
+    @Column(name = "embedding", nullable = false, columnDefinition = "VARBINARY(512)")
+    private byte[] embedding;
+
+    // Face location in the image as returned by face_recognition: top, right, bottom, left
+    @Column(name = "box_top")
+    private Integer boxTop;
+
+    @Column(name = "box_right")
+    private Integer boxRight;
+
+    @Column(name = "box_bottom")
+    private Integer boxBottom;
+
+    @Column(name = "box_left")
+    private Integer boxLeft;
+
+    // Stable name of the face in the legacy .npy layout: event_{eventId}/photo_{photoId}_face_{faceNumber}
     @Column(nullable = false)
     private String embeddingPath;
 
@@ -0,0 +1,68 @@
+package com.eventphoto.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A photo waiting to be face-indexed. A worker leases the job while it runs; a job whose lease ran out (the node died
+ * or was redeployed) is picked up again by any node. Finished jobs are deleted, so the table only holds the backlog
+ * and the jobs that gave up.
+ */
+@Entity
+@Table(name = "indexing_jobs",
+        uniqueConstraints = @UniqueConstraint(name = "uk_indexing_jobs_photo", columnNames = "photo_id"),
+        indexes = @Index(name = "idx_indexing_jobs_claim", columnList = "status, priority, next_attempt_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexingJob {
+
+    public enum Status {
+        PENDING,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain ids rather than relations: a job for a deleted photo is simply dropped when it is claimed
+    @Column(name = "event_id", nullable = false)
+    private Integer eventId;
+
+    @Column(name = "photo_id", nullable = false)
+    private Integer photoId;
+
+    // Higher runs first; fresh uploads go ahead of bulk re-indexing
+    @Column(nullable = false)
+    private Integer priority;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    // Identifies the claim holding the lease, so a worker whose lease expired cannot complete someone else's run
+    @Column(name = "lease_token", length = 36)
+    private String leaseToken;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -10,11 +10,24 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "photos")
+@Table(name = "photos", uniqueConstraints = {
+        // Settles concurrent uploads of one file: the second insert fails and answers with the first photo
+        @UniqueConstraint(name = "uk_photos_event_content_hash", columnNames = {"event_id", "content_hash"})
+}, indexes = {
+        // Serves the keyset pages of an event's photo listing
+        @Index(name = "idx_photos_event_created_id", columnList = "event_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Photo {
+
+    public enum StorageStatus {
+        STORED,
+        // Staged on the uploading node's disk and not yet in Drive; driveFileId is a placeholder
+        PENDING_STORAGE
+    }
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -26,6 +39,41 @@ public class Photo {
     @Column(name = "drive_file_id", nullable = false)
     private String driveFileId;
 
+    // Downscaled copies in the same Drive folder; null when the original is smaller or generation failed
+    @Column(name = "small_file_id")
+    private String smallFileId;
+
+    @Column(name = "medium_file_id")
+    private String mediumFileId;
+
+    @Column(name = "full_file_id")
+    private String fullFileId;
+
+    // Null for photos stored before staging existed, which are all in Drive
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage_status", length = 16)
+    private StorageStatus storageStatus = StorageStatus.STORED;
+
+    // File name in the staging directory while PENDING_STORAGE
+    @Column(name = "staged_file")
+    private String stagedFile;
+
+    // Hex SHA-256 of the uploaded file; a second upload with the same hash in the event is a duplicate
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // dHash of the upright image, see PerceptualHash
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+
+    // Set on the later frames of a burst: faces this photo already has are dropped from theirs when they are indexed
+    @Column(name = "representative_photo_id")
+    private Integer representativePhotoId;
+
+    // EXIF DateTimeOriginal, or the upload time when the file has none; bursts are frames taken seconds apart
+    @Column(name = "captured_at")
+    private LocalDateTime capturedAt;
+
     @ManyToOne
     @JoinColumn(name = "uploaded_by", nullable = false)
     private User uploadedBy;
@@ -33,6 +81,11 @@ public class Photo {
     @Column(nullable = false)
     private Boolean indexed = false;
 
+    // Faces found by the last detection run, as stored in face_embeddings; null for photos never run through
+    // detection since embeddings are stored, whose absent rows say nothing
+    @Column(name = "face_count")
+    private Integer faceCount;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
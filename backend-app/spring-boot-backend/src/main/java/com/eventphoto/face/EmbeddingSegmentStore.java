@@ -0,0 +1,298 @@
+package com.eventphoto.face;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * One append-only segment file per event holding every face encoding of that event.
+ *
+ * <pre>
+ * header : magic(int) version(int) dimensions(int) recordSize(int)
+ * record : photoId(int) faceNumber(int) vector(float32 x dimensions)
+ * </pre>
+ *
+ * All values are little-endian. Re-indexing a photo appends a new batch starting at face 0, which supersedes the
+ * older records of that photo; a photo that no longer has faces gets a single record with face number -1.
+ */
+@Component
+@Slf4j
+public class EmbeddingSegmentStore {
+
+    static final int MAGIC = 0x47455346; // "FSEG" read little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 8 + EventFaceIndex.DIMENSIONS * Float.BYTES;
+    static final int TOMBSTONE = -1;
+
+    private final Path segmentDir;
+    // One lock per event for the life of the store; a deleted event's lock serializes its next segment's writers too
+    private final Map<Integer, Object> appendLocks = new ConcurrentHashMap<>();
+
+    public EmbeddingSegmentStore(@Value("${face-index.segment-dir:face-segments}") String segmentDir) {
+        this.segmentDir = Paths.get(segmentDir);
+    }
+
+    public boolean exists(Integer eventId) {
+        return Files.exists(segmentPath(eventId));
+    }
+
+    /**
+     * Appends one photo's batch and returns the record number of its first encoding.
+     */
+    public int append(Integer eventId, int photoId, List<float[]> encodings) {
+        ByteBuffer batch = ByteBuffer.allocate(Math.max(1, encodings.size()) * RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        encode(batch, photoId, encodings);
+        return write(eventId, batch.flip());
+    }
+
+    /**
+     * Appends the batches of many photos with a single write and sync, for bulk imports and restores.
+     */
+    public void appendAll(Integer eventId, Map<Integer, List<float[]>> encodingsByPhoto) {
+        int records = encodingsByPhoto.values().stream().mapToInt(encodings -> Math.max(1, encodings.size())).sum();
+        ByteBuffer batch = ByteBuffer.allocate(records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        encodingsByPhoto.forEach((photoId, encodings) -> encode(batch, photoId, encodings));
+        write(eventId, batch.flip());
+    }
+
+    /**
+     * Replaces the event's segment with one holding exactly {@code encodingsByPhoto}, deleting it when there is
+     * nothing to hold. The encodings are read while appends to the event wait, so an append is either already part
+     * of them or lands in the new segment; the new file is written aside and moved over the old one.
+     */
+    public void replaceAll(Integer eventId, Supplier<Map<Integer, List<float[]>>> encodingsByPhoto) {
+        synchronized (appendLock(eventId)) {
+            Map<Integer, List<float[]>> photos = encodingsByPhoto.get();
+            Path path = segmentPath(eventId);
+            Path temp = segmentDir.resolve(path.getFileName() + ".tmp");
+            try {
+                if (photos.isEmpty()) {
+                    Files.deleteIfExists(path);
+                    return;
+                }
+                int records = photos.values().stream().mapToInt(encodings -> Math.max(1, encodings.size())).sum();
+                ByteBuffer batch = ByteBuffer.allocate(HEADER_SIZE + records * RECORD_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                batch.put(header());
+                photos.forEach((photoId, encodings) -> encode(batch, photoId, encodings));
+                batch.flip();
+                Files.createDirectories(segmentDir);
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    channel.force(false);
+                }
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to replace face segment of event " + eventId, e);
+            } finally {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.warn("Could not delete {}: {}", temp, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void encode(ByteBuffer batch, int photoId, List<float[]> encodings) {
+        if (encodings.isEmpty()) {
+            batch.putInt(photoId).putInt(TOMBSTONE);
+            batch.position(batch.position() + RECORD_SIZE - 8);
+        }
+        for (int i = 0; i < encodings.size(); i++) {
+            float[] encoding = encodings.get(i);
+            if (encoding.length != EventFaceIndex.DIMENSIONS) {
+                throw new IllegalArgumentException(
+                        "Expected " + EventFaceIndex.DIMENSIONS + "-d encoding, got " + encoding.length);
+            }
+            batch.putInt(photoId).putInt(i);
+            for (float value : encoding) {
+                batch.putFloat(value);
+            }
+        }
+    }
+
+    private int write(Integer eventId, ByteBuffer batch) {
+        synchronized (appendLock(eventId)) {
+            try {
+                Files.createDirectories(segmentDir);
+                try (FileChannel channel = FileChannel.open(segmentPath(eventId),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    if (size < HEADER_SIZE) {
+                        channel.write(header(), 0);
+                        size = HEADER_SIZE;
+                    }
+                    // Drop a torn record left behind by a crash mid-append
+                    int firstRecord = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+                    long end = HEADER_SIZE + (long) firstRecord * RECORD_SIZE;
+                    while (batch.hasRemaining()) {
+                        end += channel.write(batch, end);
+                    }
+                    channel.truncate(end);
+                    channel.force(false);
+                    return firstRecord;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append to face segment of event " + eventId, e);
+            }
+        }
+    }
+
+    /**
+     * Maps the event's segment and encodes the live records into a fresh in-memory index. The mapping stays open as
+     * the index's source of full-precision vectors.
+     */
+    public EventFaceIndex load(Integer eventId, EventFaceIndex.StorageSettings storage) {
+        Path path = segmentPath(eventId);
+        Reader reader = new Reader(path);
+        if (!Files.exists(path)) {
+            return new EventFaceIndex(storage, reader);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return new EventFaceIndex(storage, reader);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            checkHeader(mapped, path);
+
+            int records = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+            reader.mapping = new Mapping(mapped, records);
+
+            // First pass: the last batch of each photo is the live one
+            Map<Integer, Integer> liveFrom = new HashMap<>();
+            for (int r = 0; r < records; r++) {
+                int position = HEADER_SIZE + r * RECORD_SIZE;
+                int faceNumber = mapped.getInt(position + 4);
+                if (faceNumber <= 0) {
+                    liveFrom.put(mapped.getInt(position), r);
+                }
+            }
+
+            EventFaceIndex index = new EventFaceIndex(storage, reader);
+            float[] vector = new float[EventFaceIndex.DIMENSIONS];
+            int count = 0;
+            for (int r = 0; r < records; r++) {
+                int position = HEADER_SIZE + r * RECORD_SIZE;
+                int photoId = mapped.getInt(position);
+                int faceNumber = mapped.getInt(position + 4);
+                if (faceNumber == TOMBSTONE || r < liveFrom.getOrDefault(photoId, 0)) {
+                    continue;
+                }
+                reader.read(r, vector, 0);
+                index.putLoaded(photoId, faceNumber, r, vector);
+                count++;
+            }
+
+            log.debug("Mapped face segment {} ({} records, {} live)", path, records, count);
+            return index;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read face segment of event " + eventId, e);
+        }
+    }
+
+    public void delete(Integer eventId) {
+        synchronized (appendLock(eventId)) {
+            try {
+                Files.deleteIfExists(segmentPath(eventId));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete face segment of event " + eventId, e);
+            }
+        }
+    }
+
+    private Object appendLock(Integer eventId) {
+        return appendLocks.computeIfAbsent(eventId, id -> new Object());
+    }
+
+    private record Mapping(MappedByteBuffer buffer, int records) {
+    }
+
+    /**
+     * Random access to the full-precision vectors of one segment. Remaps the file when asked for a record appended
+     * after the current mapping was made.
+     */
+    public static final class Reader {
+
+        private final Path path;
+        private volatile Mapping mapping;
+
+        private Reader(Path path) {
+            this.path = path;
+        }
+
+        public void read(int record, float[] destination, int offset) {
+            Mapping m = mapping;
+            if (m == null || record >= m.records()) {
+                m = remap(record);
+            }
+            MappedByteBuffer buffer = m.buffer();
+            int position = HEADER_SIZE + record * RECORD_SIZE + 8;
+            for (int i = 0; i < EventFaceIndex.DIMENSIONS; i++) {
+                destination[offset + i] = buffer.getFloat(position + i * Float.BYTES);
+            }
+        }
+
+        private synchronized Mapping remap(int record) {
+            Mapping m = mapping;
+            if (m != null && record < m.records()) {
+                return m;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                m = new Mapping(buffer, (int) ((size - HEADER_SIZE) / RECORD_SIZE));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map face segment " + path, e);
+            }
+            if (record >= m.records()) {
+                throw new IllegalStateException("Record " + record + " is past the end of " + path);
+            }
+            mapping = m;
+            return m;
+        }
+    }
+
+    private Path segmentPath(Integer eventId) {
+        return segmentDir.resolve("event_" + eventId + ".seg");
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(EventFaceIndex.DIMENSIONS).putInt(RECORD_SIZE);
+        return header.flip();
+    }
+
+    private static void checkHeader(ByteBuffer mapped, Path path) throws IOException {
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+                || mapped.getInt(8) != EventFaceIndex.DIMENSIONS || mapped.getInt(12) != RECORD_SIZE) {
+            throw new IOException("Not a face segment file: " + path);
+        }
+    }
+}
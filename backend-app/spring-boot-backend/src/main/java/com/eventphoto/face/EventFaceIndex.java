@@ -0,0 +1,376 @@
+package com.eventphoto.face;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+/**
+ * In-memory encodings of one event, stored slot by slot in a {@link FaceVectorStore} so a match is one linear scan.
+ * Writers are serialized; readers scan an immutable snapshot and never block.
+ * Slots are never reused: re-indexing a photo tombstones its old slots, which keeps slot numbers stable for the
+ * optional {@link HnswGraph}. Tombstones are dropped the next time the event is loaded from its segment.
+ * With quantized storage the scan only shortlists candidates; they are re-ranked against the full-precision vectors
+ * in the event's segment file before the tolerance is applied.
+ */
+@Slf4j
+public class EventFaceIndex {
+
+    public static final int DIMENSIONS = 128;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int PQ_MAX_TRAINING_SAMPLES = 16384;
+
+    public enum Quantization { NONE, INT8, PQ }
+
+    public record StorageSettings(Quantization quantization, float int8Range, int pqSubspaces, int pqTrainSize,
+                                  float rerankMargin) {
+        public static final StorageSettings FULL_PRECISION = new StorageSettings(Quantization.NONE, 0.5f, 32, 8192, 0f);
+    }
+
+    public record HnswSettings(int m, int efConstruction, int efSearch, boolean verify) {
+    }
+
+    private record Snapshot(FaceVectorStore store, int[] photoIds, int[] faceNumbers, int[] records,
+                            boolean[] deleted, int size, FaceClusterSummary.Outline outline) {
+    }
+
+    private final StorageSettings storage;
+    private final EmbeddingSegmentStore.Reader fullPrecision;
+    private final Object writeLock = new Object();
+    private final Object trainLock = new Object();
+    private final Map<Integer, int[]> slotsByPhoto = new HashMap<>();
+    // Written under the write lock; readers get its outline from the snapshot
+    private final FaceClusterSummary summary = new FaceClusterSummary();
+    private volatile Snapshot snapshot;
+    private volatile int liveFaces;
+    private volatile HnswGraph graph;
+    private volatile boolean graphReady;
+    private volatile HnswSettings graphSettings;
+    // Set while a catch-up is queued and has not started yet, so writes in between share it
+    private final AtomicBoolean catchUpPending = new AtomicBoolean();
+
+    public EventFaceIndex() {
+        this(StorageSettings.FULL_PRECISION, null);
+    }
+
+    /**
+     * @param fullPrecision the event's segment, used to re-rank quantized candidates; without it the index falls
+     *                      back to full-precision storage
+     */
+    public EventFaceIndex(StorageSettings storage, EmbeddingSegmentStore.Reader fullPrecision) {
+        this.storage = fullPrecision == null ? StorageSettings.FULL_PRECISION : storage;
+        this.fullPrecision = fullPrecision;
+        FaceVectorStore store = this.storage.quantization() == Quantization.NONE
+                ? new FloatVectorStore(0)
+                // PQ events start on int8 until there are enough faces to train codebooks
+                : new Int8VectorStore(0, this.storage.int8Range());
+        this.snapshot = new Snapshot(store, new int[0], new int[0], new int[0], new boolean[0], 0, summary.outline());
+    }
+
+    /**
+     * Number of slots, including tombstoned ones.
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    public int bytesPerVector() {
+        return snapshot.store().bytesPerVector();
+    }
+
+    public boolean hasGraph() {
+        return graph != null;
+    }
+
+    /**
+     * Stores the encodings of a photo, replacing whatever was indexed for it before (re-index).
+     *
+     * @param firstRecord segment record holding the first of {@code encodings}; the rest follow contiguously
+     */
+    public void putPhoto(int photoId, List<float[]> encodings, int firstRecord) {
+        for (float[] encoding : encodings) {
+            if (encoding.length != DIMENSIONS) {
+                throw new IllegalArgumentException("Expected " + DIMENSIONS + "-d encoding, got " + encoding.length);
+            }
+        }
+        synchronized (writeLock) {
+            Snapshot current = ensureCapacity(snapshot, snapshot.size() + encodings.size());
+            int[] previous = slotsByPhoto.remove(photoId);
+            if (previous != null) {
+                for (int slot : previous) {
+                    current.deleted()[slot] = true;
+                }
+                liveFaces -= previous.length;
+            }
+
+            // Slots past the published size are invisible to readers, so they can be filled in place
+            int size = current.size();
+            int[] slots = new int[encodings.size()];
+            for (int i = 0; i < encodings.size(); i++) {
+                write(current, size + i, photoId, i, firstRecord + i, encodings.get(i));
+                summary.add(encodings.get(i));
+                slots[i] = size + i;
+            }
+            if (slots.length > 0) {
+                slotsByPhoto.put(photoId, slots);
+            }
+            liveFaces += slots.length;
+            snapshot = withSize(current, size + encodings.size());
+        }
+    }
+
+    /**
+     * Appends one face read from the segment during a load; the loader has already resolved superseded records.
+     */
+    void putLoaded(int photoId, int faceNumber, int record, float[] vector) {
+        synchronized (writeLock) {
+            Snapshot current = ensureCapacity(snapshot, snapshot.size() + 1);
+            int slot = current.size();
+            write(current, slot, photoId, faceNumber, record, vector);
+            summary.add(vector);
+            int[] slots = slotsByPhoto.get(photoId);
+            slots = slots == null ? new int[]{slot} : Arrays.copyOf(slots, slots.length + 1);
+            slots[slots.length - 1] = slot;
+            slotsByPhoto.put(photoId, slots);
+            liveFaces++;
+            snapshot = withSize(current, slot + 1);
+        }
+    }
+
+    public boolean needsProductQuantizer() {
+        return storage.quantization() == Quantization.PQ
+                && !(snapshot.store() instanceof PqVectorStore)
+                && liveFaces >= storage.pqTrainSize();
+    }
+
+    /**
+     * Trains PQ codebooks from the full-precision segment and re-encodes every slot with them. The bulk of the work
+     * happens outside the write lock; only slots added meanwhile are encoded while holding it.
+     */
+    public void trainProductQuantizer() {
+        synchronized (trainLock) {
+            if (!needsProductQuantizer()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Snapshot s = snapshot;
+            Random random = new Random(s.size());
+
+            int[] live = new int[s.size()];
+            int liveCount = 0;
+            for (int slot = 0; slot < s.size(); slot++) {
+                if (!s.deleted()[slot]) {
+                    live[liveCount++] = slot;
+                }
+            }
+            int sampleCount = Math.min(liveCount, PQ_MAX_TRAINING_SAMPLES);
+            float[] samples = new float[sampleCount * DIMENSIONS];
+            for (int i = 0; i < sampleCount; i++) {
+                // Partial Fisher-Yates shuffle picks distinct live slots
+                int pick = i + random.nextInt(liveCount - i);
+                int slot = live[pick];
+                live[pick] = live[i];
+                live[i] = slot;
+                fullPrecision.read(s.records()[slot], samples, i * DIMENSIONS);
+            }
+
+            FaceVectorStore pq = PqVectorStore.train(storage.pqSubspaces(), samples, sampleCount,
+                    s.store().capacity(), random.nextLong());
+            float[] vector = new float[DIMENSIONS];
+            for (int slot = 0; slot < s.size(); slot++) {
+                fullPrecision.read(s.records()[slot], vector, 0);
+                pq.write(slot, vector);
+            }
+
+            synchronized (writeLock) {
+                Snapshot current = snapshot;
+                if (current.store().capacity() > pq.capacity()) {
+                    pq = pq.grow(current.store().capacity());
+                }
+                for (int slot = s.size(); slot < current.size(); slot++) {
+                    fullPrecision.read(current.records()[slot], vector, 0);
+                    pq.write(slot, vector);
+                }
+                snapshot = new Snapshot(pq, current.photoIds(), current.faceNumbers(), current.records(),
+                        current.deleted(), current.size(), current.outline());
+            }
+            log.info("Trained product quantizer on {} faces in {} ms ({} bytes per face)",
+                    sampleCount, System.currentTimeMillis() - start, pq.bytesPerVector());
+        }
+    }
+
+    /**
+     * Attaches an empty graph; {@link #catchUpGraph()} fills it. Until the first catch-up finishes, matches keep
+     * using the exact scan.
+     */
+    public void attachGraph(HnswSettings settings) {
+        synchronized (writeLock) {
+            if (graph == null) {
+                graphSettings = settings;
+                graph = new HnswGraph(settings.m(), settings.efConstruction(), () -> snapshot.store(),
+                        System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Claims the next {@link #catchUpGraph()}: true when the index has a graph and no catch-up is queued yet, in which
+     * case the caller must run one.
+     */
+    public boolean claimCatchUp() {
+        return graph != null && catchUpPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Inserts every slot the graph has not seen yet. Safe to call from several threads; inserts are serialized.
+     */
+    public void catchUpGraph() {
+        HnswGraph g = graph;
+        if (g == null) {
+            return;
+        }
+        synchronized (g) {
+            // Slots published from here on need a catch-up of their own
+            catchUpPending.set(false);
+            long start = System.currentTimeMillis();
+            int from = g.size();
+            int to = snapshot.size();
+            for (int node = from; node < to; node++) {
+                g.insert(node);
+            }
+            if (!graphReady) {
+                graphReady = true;
+                log.info("Built HNSW graph over {} faces in {} ms", to, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * Cheap check before {@link #match}: false means no face of this event can be within {@code tolerance}.
+     */
+    public boolean mayMatch(float[] query, float tolerance) {
+        return snapshot.outline().mayContain(query, tolerance);
+    }
+
+    /**
+     * Returns the closest face of every photo within {@code tolerance}, nearest first.
+     */
+    public List<FaceMatch> match(float[] query, float tolerance) {
+        if (query.length != DIMENSIONS) {
+            throw new IllegalArgumentException("Expected " + DIMENSIONS + "-d encoding, got " + query.length);
+        }
+        HnswGraph g = graph;
+        if (g == null || !graphReady) {
+            return search(query, tolerance, null);
+        }
+
+        List<FaceMatch> approximate = search(query, tolerance, g);
+        if (!graphSettings.verify()) {
+            return approximate;
+        }
+        List<FaceMatch> exact = search(query, tolerance, null);
+        if (approximate.size() != exact.size()) {
+            log.warn("HNSW recall check: graph found {} of {} matching photos", approximate.size(), exact.size());
+        }
+        return exact;
+    }
+
+    /**
+     * Scans every slot, ignoring the graph.
+     */
+    public List<FaceMatch> exactMatch(float[] query, float tolerance) {
+        return search(query, tolerance, null);
+    }
+
+    private List<FaceMatch> search(float[] query, float tolerance, HnswGraph g) {
+        boolean quantized = !snapshot.store().exact();
+        float coarse = quantized ? tolerance + storage.rerankMargin() : tolerance;
+        float coarseLimit = coarse * coarse;
+
+        LongStream.Builder candidates = LongStream.builder();
+        int scanFrom = 0;
+        if (g != null) {
+            HnswGraph.Result result = g.search(query, coarseLimit, graphSettings.efSearch());
+            for (long hit : result.hits()) {
+                candidates.add(hit);
+            }
+            // Faces indexed since the last catch-up are not in the graph yet
+            scanFrom = result.covered();
+        }
+        // Read after the graph search so the snapshot covers every node it returned
+        Snapshot s = snapshot;
+        FaceVectorStore.Scorer scorer = s.store().scorer(query);
+        for (int slot = scanFrom; slot < s.size(); slot++) {
+            float d2 = scorer.distance(slot);
+            if (d2 <= coarseLimit) {
+                candidates.add(HnswGraph.pack(d2, slot));
+            }
+        }
+
+        float limit = tolerance * tolerance;
+        float[] vector = quantized ? new float[DIMENSIONS] : null;
+        Map<Integer, FaceMatch> best = new HashMap<>();
+        for (long candidate : candidates.build().toArray()) {
+            int slot = HnswGraph.node(candidate);
+            if (s.deleted()[slot]) {
+                continue;
+            }
+            float d2 = HnswGraph.distance(candidate);
+            if (quantized) {
+                fullPrecision.read(s.records()[slot], vector, 0);
+                d2 = FaceDistance.squared(query, vector, 0, DIMENSIONS);
+            }
+            if (d2 <= limit) {
+                collect(best, s, slot, d2);
+            }
+        }
+        return sorted(best);
+    }
+
+    private static Snapshot ensureCapacity(Snapshot s, int required) {
+        if (required <= s.photoIds().length) {
+            return s;
+        }
+        int capacity = Math.max(required, Math.max(INITIAL_CAPACITY, s.photoIds().length * 2));
+        return new Snapshot(s.store().grow(capacity),
+                Arrays.copyOf(s.photoIds(), capacity),
+                Arrays.copyOf(s.faceNumbers(), capacity),
+                Arrays.copyOf(s.records(), capacity),
+                Arrays.copyOf(s.deleted(), capacity),
+                s.size(), s.outline());
+    }
+
+    private static void write(Snapshot s, int slot, int photoId, int faceNumber, int record, float[] vector) {
+        s.store().write(slot, vector);
+        s.photoIds()[slot] = photoId;
+        s.faceNumbers()[slot] = faceNumber;
+        s.records()[slot] = record;
+    }
+
+    // Caller holds the write lock; publishes the summary along with the new slots
+    private Snapshot withSize(Snapshot s, int size) {
+        return new Snapshot(s.store(), s.photoIds(), s.faceNumbers(), s.records(), s.deleted(), size,
+                summary.outline());
+    }
+
+    private static void collect(Map<Integer, FaceMatch> best, Snapshot s, int slot, float d2) {
+        int photoId = s.photoIds()[slot];
+        float distance = (float) Math.sqrt(d2);
+        FaceMatch previous = best.get(photoId);
+        if (previous == null || distance < previous.distance()) {
+            best.put(photoId, new FaceMatch(photoId, s.faceNumbers()[slot], distance));
+        }
+    }
+
+    private static List<FaceMatch> sorted(Map<Integer, FaceMatch> best) {
+        List<FaceMatch> matches = new ArrayList<>(best.values());
+        matches.sort(FaceMatch.RANKING);
+        return matches;
+    }
+}
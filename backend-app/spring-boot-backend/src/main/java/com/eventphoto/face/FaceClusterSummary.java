@@ -0,0 +1,66 @@
+package com.eventphoto.face;
+
+import java.util.Arrays;
+
+/**
+ * Cheap outline of an event's faces used to skip events that cannot match a query. Faces are grouped by leader
+ * clustering: a face further than {@link #LEADER_DISTANCE} from every leader becomes a new leader, otherwise it joins
+ * the nearest one and widens that cluster's radius. Radii only ever grow, so the bound stays valid when faces are
+ * removed. Writers must be serialized by the owning index; readers use an {@link Outline} it has published.
+ */
+final class FaceClusterSummary {
+
+    static final int MAX_LEADERS = 64;
+    private static final float LEADER_DISTANCE = 0.6f;
+    private static final int DIM = EventFaceIndex.DIMENSIONS;
+
+    private float[] leaders = new float[8 * DIM];
+    private float[] radii = new float[8];
+    private int count;
+
+    /**
+     * The clusters as of one write, sharing the summary's arrays instead of copying them: leaders are only appended
+     * past {@code count} and radii only grow, so an outline stays a valid bound while the summary keeps changing.
+     */
+    record Outline(float[] leaders, float[] radii, int count) {
+
+        /**
+         * False only when no face of any cluster can be within {@code tolerance} of the query (triangle inequality).
+         */
+        boolean mayContain(float[] query, float tolerance) {
+            for (int c = 0; c < count; c++) {
+                float reach = radii[c] + tolerance;
+                if (FaceDistance.squared(query, 0, leaders, c * DIM, DIM) <= reach * reach) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    void add(float[] vector) {
+        int nearest = -1;
+        float nearestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < count; c++) {
+            float d = (float) Math.sqrt(FaceDistance.squared(vector, 0, leaders, c * DIM, DIM));
+            if (d < nearestDistance) {
+                nearestDistance = d;
+                nearest = c;
+            }
+        }
+        if (nearest >= 0 && (nearestDistance <= LEADER_DISTANCE || count == MAX_LEADERS)) {
+            radii[nearest] = Math.max(radii[nearest], nearestDistance);
+            return;
+        }
+        if (count == radii.length) {
+            leaders = Arrays.copyOf(leaders, count * 2 * DIM);
+            radii = Arrays.copyOf(radii, count * 2);
+        }
+        System.arraycopy(vector, 0, leaders, count * DIM, DIM);
+        radii[count++] = 0f;
+    }
+
+    Outline outline() {
+        return new Outline(leaders, radii, count);
+    }
+}
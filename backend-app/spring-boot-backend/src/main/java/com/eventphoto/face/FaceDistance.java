@@ -0,0 +1,52 @@
+package com.eventphoto.face;
+
+/**
+ * Squared Euclidean distance between a query encoding and rows of a flat encoding array.
+ * Uses the Vector API when the jdk.incubator.vector module is resolved, and a plain loop otherwise.
+ */
+public final class FaceDistance {
+
+    public static final boolean SIMD_ENABLED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private FaceDistance() {
+    }
+
+    public static float squared(float[] query, float[] data, int offset, int dimensions) {
+        return squared(query, 0, data, offset, dimensions);
+    }
+
+    public static float squared(float[] a, int aOffset, float[] b, int bOffset, int dimensions) {
+        if (SIMD_ENABLED) {
+            return SimdFaceDistance.squared(a, aOffset, b, bOffset, dimensions);
+        }
+        return scalarSquared(a, aOffset, b, bOffset, dimensions);
+    }
+
+    /**
+     * Squared distance between a query already divided by the quantization scale and one row of int8 codes.
+     */
+    public static float squaredInt8(float[] scaledQuery, byte[] codes, int offset, int dimensions) {
+        if (SIMD_ENABLED) {
+            return SimdFaceDistance.squaredInt8(scaledQuery, codes, offset, dimensions);
+        }
+        return scalarSquaredInt8(scaledQuery, codes, offset, dimensions);
+    }
+
+    static float scalarSquaredInt8(float[] scaledQuery, byte[] codes, int offset, int dimensions) {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            float d = scaledQuery[i] - codes[offset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    static float scalarSquared(float[] a, int aOffset, float[] b, int bOffset, int dimensions) {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,246 @@
+package com.eventphoto.face;
+
+import com.eventphoto.repository.FaceEmbeddingBulkRepository;
+import com.eventphoto.repository.FaceEmbeddingRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FaceIndexRegistry {
+
+    private final EmbeddingSegmentStore segmentStore;
+    private final FaceEmbeddingRepository faceEmbeddingRepository;
+    // Access-ordered, so the least recently matched event is evicted first; guarded by itself
+    private final LinkedHashMap<Integer, Slot> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService indexWorker = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "face-index-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Events kept in memory; evicted events are mapped again from their segment on the next match
+    @Value("${face-index.max-loaded-events:64}")
+    private int maxLoadedEvents;
+
+    @Value("${face-index.hnsw.enabled:true}")
+    private boolean hnswEnabled;
+
+    // Events with fewer faces than this are matched with the exact scan only
+    @Value("${face-index.hnsw.threshold:20000}")
+    private int hnswThreshold;
+
+    @Value("${face-index.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${face-index.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
+
+    @Value("${face-index.hnsw.ef-search:64}")
+    private int hnswEfSearch;
+
+    @Value("${face-index.hnsw.verify:false}")
+    private boolean hnswVerify;
+
+    // none, int8 or pq; quantized events keep full-precision vectors only in their segment file
+    @Value("${face-index.quantization:none}")
+    private String quantization;
+
+    @Value("${face-index.quantization.int8-range:0.5}")
+    private float int8Range;
+
+    @Value("${face-index.quantization.pq-subspaces:32}")
+    private int pqSubspaces;
+
+    @Value("${face-index.quantization.pq-train-size:8192}")
+    private int pqTrainSize;
+
+    @Value("${face-index.quantization.rerank-margin:0.15}")
+    private float rerankMargin;
+
+    /**
+     * The event's index, loading it on first use. The load runs under a lock of its own event only, so matches on
+     * other events never wait for the segment or database I/O.
+     */
+    public EventFaceIndex getOrLoad(Integer eventId) {
+        Slot slot;
+        synchronized (indexes) {
+            slot = indexes.computeIfAbsent(eventId, id -> new Slot());
+            evictLeastRecentlyUsed();
+        }
+        EventFaceIndex index = slot.index;
+        if (index == null) {
+            boolean loaded = false;
+            synchronized (slot) {
+                index = slot.index;
+                if (index == null) {
+                    index = load(eventId);
+                    slot.index = index;
+                    loaded = true;
+                }
+            }
+            if (loaded) {
+                maintain(eventId, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Persists a photo's faces to the event's segment and adds them to the event if it is already in memory.
+     * Events that are not loaded yet pick the faces up on their first load.
+     */
+    public void putPhoto(Integer eventId, int photoId, List<float[]> encodings) {
+        int firstRecord = segmentStore.append(eventId, photoId, encodings);
+        Slot slot;
+        synchronized (indexes) {
+            slot = indexes.get(eventId);
+        }
+        if (slot == null) {
+            return;
+        }
+        EventFaceIndex updated;
+        // Waits for a load in progress, which may or may not have read the new records; putPhoto replaces either way
+        synchronized (slot) {
+            updated = slot.index;
+            if (updated != null) {
+                updated.putPhoto(photoId, encodings, firstRecord);
+            }
+        }
+        if (updated != null) {
+            maintain(eventId, updated);
+        }
+    }
+
+    public void delete(Integer eventId) {
+        synchronized (indexes) {
+            indexes.remove(eventId);
+        }
+        segmentStore.delete(eventId);
+    }
+
+    /**
+     * Rebuilds the event's segment and in-memory index from face_embeddings. Indexing writes face_embeddings before
+     * appending to the segment, and the segment store holds appends while the rows are read, so no face stored
+     * meanwhile is lost; a write waiting for the slot then replaces its photo in the fresh index.
+     */
+    public void rebuildFromDatabase(Integer eventId) {
+        Slot slot;
+        synchronized (indexes) {
+            slot = indexes.computeIfAbsent(eventId, id -> new Slot());
+            evictLeastRecentlyUsed();
+        }
+        EventFaceIndex index;
+        synchronized (slot) {
+            segmentStore.replaceAll(eventId, () -> storedEncodings(eventId));
+            index = segmentStore.load(eventId, storageSettings());
+            slot.index = index;
+        }
+        log.info("Rebuilt face index of event {} from the database: {} faces", eventId, index.size());
+        maintain(eventId, index);
+    }
+
+    private EventFaceIndex load(Integer eventId) {
+        if (!segmentStore.exists(eventId)) {
+            restoreSegment(eventId);
+        }
+        EventFaceIndex loaded = segmentStore.load(eventId, storageSettings());
+        log.info("Loaded face index of event {}: {} faces at {} bytes each", eventId, loaded.size(),
+                loaded.bytesPerVector());
+        return loaded;
+    }
+
+    // Caller holds the indexes lock. An evicted index stays usable by matches already holding it.
+    private void evictLeastRecentlyUsed() {
+        Iterator<Integer> eldest = indexes.keySet().iterator();
+        while (indexes.size() > Math.max(1, maxLoadedEvents) && eldest.hasNext()) {
+            Integer eventId = eldest.next();
+            eldest.remove();
+            log.info("Evicted face index of event {} from memory", eventId);
+        }
+    }
+
+    // The segment is a local copy; face_embeddings is the durable store it can always be rebuilt from
+    private void restoreSegment(Integer eventId) {
+        Map<Integer, List<float[]>> encodingsByPhoto = storedEncodings(eventId);
+        if (!encodingsByPhoto.isEmpty()) {
+            segmentStore.appendAll(eventId, encodingsByPhoto);
+        }
+    }
+
+    private Map<Integer, List<float[]>> storedEncodings(Integer eventId) {
+        long start = System.currentTimeMillis();
+        FaceEmbeddingBulkRepository.PackedEmbeddings packed =
+                faceEmbeddingRepository.loadEventEmbeddings(eventId, EventFaceIndex.DIMENSIONS);
+        Map<Integer, List<float[]>> encodingsByPhoto = new LinkedHashMap<>();
+        for (int i = 0; i < packed.count(); i++) {
+            float[] vector = Arrays.copyOfRange(packed.vectors(), i * EventFaceIndex.DIMENSIONS,
+                    (i + 1) * EventFaceIndex.DIMENSIONS);
+            encodingsByPhoto.computeIfAbsent(packed.photoIds()[i], photoId -> new ArrayList<>()).add(vector);
+        }
+        if (packed.count() > 0) {
+            log.info("Read {} faces of event {} from the database in {} ms", packed.count(), eventId,
+                    System.currentTimeMillis() - start);
+        }
+        return encodingsByPhoto;
+    }
+
+    private EventFaceIndex.StorageSettings storageSettings() {
+        return new EventFaceIndex.StorageSettings(
+                EventFaceIndex.Quantization.valueOf(quantization.trim().toUpperCase()),
+                int8Range, pqSubspaces, pqTrainSize, rerankMargin);
+    }
+
+    // Runs after a load or a write, never per match; a catch-up already queued for the index covers later writes too
+    private void maintain(Integer eventId, EventFaceIndex index) {
+        if (index.needsProductQuantizer()) {
+            indexWorker.execute(() -> {
+                try {
+                    index.trainProductQuantizer();
+                } catch (Exception e) {
+                    log.error("Failed to train product quantizer for event {}: {}", eventId, e.getMessage());
+                }
+            });
+        }
+        if (!hnswEnabled || index.size() < hnswThreshold) {
+            return;
+        }
+        if (!index.hasGraph()) {
+            log.info("Event {} reached {} faces, building HNSW graph", eventId, index.size());
+            index.attachGraph(new EventFaceIndex.HnswSettings(hnswM, hnswEfConstruction, hnswEfSearch, hnswVerify));
+        }
+        if (!index.claimCatchUp()) {
+            return;
+        }
+        indexWorker.execute(() -> {
+            try {
+                index.catchUpGraph();
+            } catch (Exception e) {
+                log.error("Failed to update HNSW graph for event {}: {}", eventId, e.getMessage());
+            }
+        });
+    }
+
+    private static final class Slot {
+        // Set once loaded; written under the slot's lock
+        volatile EventFaceIndex index;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexWorker.shutdownNow();
+    }
+}
@@ -0,0 +1,12 @@
+package com.eventphoto.face;
+
+import java.util.Comparator;
+
+public record FaceMatch(int photoId, int faceNumber, float distance) {
+
+    /**
+     * Nearest first; ties broken by photo id so the order is total and can be paged with a keyset cursor.
+     */
+    public static final Comparator<FaceMatch> RANKING = Comparator.comparingDouble(FaceMatch::distance)
+            .thenComparingInt(FaceMatch::photoId);
+}
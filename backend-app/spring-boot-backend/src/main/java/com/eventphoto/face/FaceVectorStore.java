@@ -0,0 +1,36 @@
+package com.eventphoto.face;
+
+/**
+ * Slot-addressed storage for the encodings of one event. Implementations differ in how much of each vector they
+ * keep; only {@link FloatVectorStore} is exact, the others need a re-rank against the segment file.
+ * A store never changes size: {@link #grow(int)} returns a copy so published snapshots stay valid.
+ */
+abstract class FaceVectorStore {
+
+    static final int DIM = EventFaceIndex.DIMENSIONS;
+
+    @FunctionalInterface
+    interface Scorer {
+        float distance(int slot);
+    }
+
+    abstract int capacity();
+
+    abstract FaceVectorStore grow(int capacity);
+
+    abstract void write(int slot, float[] vector);
+
+    /**
+     * Squared distance between two stored slots.
+     */
+    abstract float distance(int a, int b);
+
+    /**
+     * Squared distance from a full-precision query to stored slots.
+     */
+    abstract Scorer scorer(float[] query);
+
+    abstract boolean exact();
+
+    abstract int bytesPerVector();
+}
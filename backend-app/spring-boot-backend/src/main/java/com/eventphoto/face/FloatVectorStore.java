@@ -0,0 +1,51 @@
+package com.eventphoto.face;
+
+import java.util.Arrays;
+
+final class FloatVectorStore extends FaceVectorStore {
+
+    private final float[] vectors;
+
+    FloatVectorStore(int capacity) {
+        this(new float[capacity * DIM]);
+    }
+
+    private FloatVectorStore(float[] vectors) {
+        this.vectors = vectors;
+    }
+
+    @Override
+    int capacity() {
+        return vectors.length / DIM;
+    }
+
+    @Override
+    FaceVectorStore grow(int capacity) {
+        return new FloatVectorStore(Arrays.copyOf(vectors, capacity * DIM));
+    }
+
+    @Override
+    void write(int slot, float[] vector) {
+        System.arraycopy(vector, 0, vectors, slot * DIM, DIM);
+    }
+
+    @Override
+    float distance(int a, int b) {
+        return FaceDistance.squared(vectors, a * DIM, vectors, b * DIM, DIM);
+    }
+
+    @Override
+    Scorer scorer(float[] query) {
+        return slot -> FaceDistance.squared(query, 0, vectors, slot * DIM, DIM);
+    }
+
+    @Override
+    boolean exact() {
+        return true;
+    }
+
+    @Override
+    int bytesPerVector() {
+        return DIM * Float.BYTES;
+    }
+}
@@ -0,0 +1,329 @@
+package com.eventphoto.face;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Hierarchical navigable small world graph over the slots of one {@link EventFaceIndex}.
+ * Nodes are slot numbers and must be inserted in order; distances come from the owning index's current
+ * {@link FaceVectorStore}, so the graph works unchanged over float, int8 or PQ storage.
+ * Candidates are packed into longs as (squared distance bits, node) so the heaps stay allocation-free.
+ */
+final class HnswGraph {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Supplier<FaceVectorStore> vectors;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // links[node][layer] = {count, neighbour...}
+    private int[][][] links = new int[0][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private volatile int size;
+
+    record Result(long[] hits, int covered) {
+    }
+
+    HnswGraph(int m, int efConstruction, Supplier<FaceVectorStore> vectors, long seed) {
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectors = vectors;
+        this.random = new Random(seed);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void insert(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node != size) {
+                throw new IllegalStateException("Expected node " + size + ", got " + node);
+            }
+            FaceVectorStore store = vectors.get();
+            FaceVectorStore.Scorer own = slot -> store.distance(node, slot);
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+            if (links.length <= node) {
+                links = Arrays.copyOf(links, Math.max(node + 1, links.length * 2));
+            }
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[maxLinks(l) + 1];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                size = node + 1;
+                return;
+            }
+
+            int ep = entryPoint;
+            float epDist = own.distance(ep);
+            for (int l = maxLevel; l > level; l--) {
+                long best = greedy(own, pack(epDist, ep), l);
+                ep = node(best);
+                epDist = distance(best);
+            }
+
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                long[] candidates = searchLayer(own, pack(epDist, ep), efConstruction, l, node).sortedAscending();
+                int[] selected = selectNeighbours(store, candidates, m);
+                int[] ownLinks = links[node][l];
+                ownLinks[0] = selected.length;
+                System.arraycopy(selected, 0, ownLinks, 1, selected.length);
+                for (int neighbour : selected) {
+                    link(store, neighbour, node, l);
+                }
+                ep = node(candidates[0]);
+                epDist = distance(candidates[0]);
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            size = node + 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the inserted nodes within {@code limitSquared} of the query. Starts with {@code efSearch} candidates and
+     * widens while every candidate found is still inside the radius, so dense clusters are not cut off.
+     */
+    Result search(float[] query, float limitSquared, int efSearch) {
+        lock.readLock().lock();
+        try {
+            int covered = size;
+            if (entryPoint < 0) {
+                return new Result(new long[0], covered);
+            }
+            FaceVectorStore.Scorer scorer = vectors.get().scorer(query);
+            long ep = pack(scorer.distance(entryPoint), entryPoint);
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedy(scorer, ep, l);
+            }
+
+            int ef = Math.max(1, efSearch);
+            while (true) {
+                long[] found = searchLayer(scorer, ep, ef, 0, covered).sortedAscending();
+                int within = 0;
+                while (within < found.length && distance(found[within]) <= limitSquared) {
+                    within++;
+                }
+                if (within < found.length || found.length < ef || found.length >= covered) {
+                    return new Result(Arrays.copyOf(found, within), covered);
+                }
+                ef *= 2;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long greedy(FaceVectorStore.Scorer scorer, long start, int layer) {
+        long best = start;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[node(best)][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int n = neighbours[i];
+                float d = scorer.distance(n);
+                if (d < distance(best)) {
+                    best = pack(d, n);
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    private LongHeap searchLayer(FaceVectorStore.Scorer scorer, long entry, int ef, int layer, int nodeCount) {
+        BitSet visited = new BitSet(nodeCount);
+        visited.set(node(entry));
+        LongHeap candidates = new LongHeap(false);
+        LongHeap results = new LongHeap(true);
+        candidates.push(entry);
+        results.push(entry);
+
+        while (!candidates.isEmpty()) {
+            long current = candidates.poll();
+            if (results.size() >= ef && distance(current) > distance(results.peek())) {
+                break;
+            }
+            int[] neighbours = links[node(current)][layer];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int n = neighbours[i];
+                if (n >= nodeCount || visited.get(n)) {
+                    continue;
+                }
+                visited.set(n);
+                float d = scorer.distance(n);
+                if (results.size() < ef || d < distance(results.peek())) {
+                    long candidate = pack(d, n);
+                    candidates.push(candidate);
+                    results.push(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Keeps a candidate only if it is closer to the base than to every neighbour already kept, then tops up
+    // with the nearest pruned ones so sparse regions still get full neighbour lists.
+    private int[] selectNeighbours(FaceVectorStore store, long[] sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.length)];
+        boolean[] taken = new boolean[sortedCandidates.length];
+        int count = 0;
+        for (int c = 0; c < sortedCandidates.length && count < selected.length; c++) {
+            int candidate = node(sortedCandidates[c]);
+            float toBase = distance(sortedCandidates[c]);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (store.distance(candidate, selected[i]) < toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+                taken[c] = true;
+            }
+        }
+        for (int c = 0; c < sortedCandidates.length && count < selected.length; c++) {
+            if (!taken[c]) {
+                selected[count++] = node(sortedCandidates[c]);
+            }
+        }
+        return selected;
+    }
+
+    private void link(FaceVectorStore store, int from, int to, int layer) {
+        int[] own = links[from][layer];
+        int count = own[0];
+        if (count < own.length - 1) {
+            own[count + 1] = to;
+            own[0] = count + 1;
+            return;
+        }
+
+        LongHeap all = new LongHeap(true);
+        for (int i = 1; i <= count; i++) {
+            all.push(pack(store.distance(from, own[i]), own[i]));
+        }
+        all.push(pack(store.distance(from, to), to));
+        int[] selected = selectNeighbours(store, all.sortedAscending(), own.length - 1);
+        own[0] = selected.length;
+        System.arraycopy(selected, 0, own, 1, selected.length);
+    }
+
+    private int maxLinks(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    // Squared distances are non-negative, so their raw float bits order the same way as the values
+    static long pack(float distance, int node) {
+        return ((long) Float.floatToRawIntBits(distance) << 32) | (node & 0xffffffffL);
+    }
+
+    static int node(long packed) {
+        return (int) packed;
+    }
+
+    static float distance(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static final class LongHeap {
+        private final boolean max;
+        private long[] items = new long[16];
+        private int size;
+
+        LongHeap(boolean max) {
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return items[0];
+        }
+
+        void push(long value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            int i = size++;
+            items[i] = value;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(items[i], items[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        long poll() {
+            long top = items[0];
+            items[0] = items[--size];
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int first = i;
+                if (left < size && before(items[left], items[first])) {
+                    first = left;
+                }
+                if (right < size && before(items[right], items[first])) {
+                    first = right;
+                }
+                if (first == i) {
+                    return top;
+                }
+                swap(i, first);
+                i = first;
+            }
+        }
+
+        long[] sortedAscending() {
+            long[] sorted = Arrays.copyOf(items, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private boolean before(long a, long b) {
+            return max ? a > b : a < b;
+        }
+
+        private void swap(int i, int j) {
+            long t = items[i];
+            items[i] = items[j];
+            items[j] = t;
+        }
+    }
+}
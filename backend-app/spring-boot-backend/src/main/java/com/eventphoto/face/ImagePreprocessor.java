@@ -0,0 +1,102 @@
+package com.eventphoto.face;
+
+import com.eventphoto.image.ImageScaler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Shrinks photos to the size face detection needs before they are sent to the face service: decoded with
+ * subsampling, turned upright according to their EXIF orientation, scaled to a long edge and re-encoded. Images that
+ * are already small and upright, images ImageIO cannot decode and images over {@code face-preprocess.max-pixels} are
+ * passed through unchanged.
+ */
+@Component
+@Slf4j
+public class ImagePreprocessor {
+
+    /**
+     * Image to send to the face service: {@code image}, or the unchanged file {@code file} when prepared from one.
+     * Face boxes found in it are {@code scale} times smaller than in the upright original.
+     */
+    public record Prepared(byte[] image, Path file, double scale) {
+
+        Prepared(byte[] image, double scale) {
+            this(image, null, scale);
+        }
+
+        public boolean downscaled() {
+            return scale > 1;
+        }
+    }
+
+    @Value("${face-preprocess.enabled:true}")
+    private boolean enabled;
+
+    @Value("${face-preprocess.jpeg-quality:0.9}")
+    private float jpegQuality;
+
+    // Larger images are not decoded here at all, however far they could be subsampled
+    @Value("${face-preprocess.max-pixels:100000000}")
+    private long maxPixels;
+
+    public Prepared prepare(byte[] original, int longEdge) {
+        if (!enabled || longEdge <= 0) {
+            return new Prepared(original, 1);
+        }
+        try {
+            ImageScaler.Info info = ImageScaler.info(original);
+            if (!needsPreparing(info, longEdge)) {
+                return new Prepared(original, 1);
+            }
+            BufferedImage upright = ImageScaler.readUpright(original, longEdge);
+            byte[] prepared = ImageScaler.writeJpeg(upright, jpegQuality);
+            log.debug("Prepared {}x{} image ({} bytes) as {}x{} ({} bytes)", info.width(), info.height(),
+                    original.length, upright.getWidth(), upright.getHeight(), prepared.length);
+            return new Prepared(prepared, Math.max(1.0, (double) info.longEdge() / longEdge));
+        } catch (Exception e) {
+            // Let the face service try its own decoder on whatever this is
+            log.debug("Sending image unprocessed: {}", e.toString());
+            return new Prepared(original, 1);
+        }
+    }
+
+    /**
+     * Prepares an image file, such as a spooled upload, decoding it from disk. An image that needs no change is not
+     * read at all: the result points at the file, so it can be streamed to the face service.
+     */
+    public Prepared prepare(Path original, int longEdge) {
+        if (!enabled || longEdge <= 0) {
+            return new Prepared(null, original, 1);
+        }
+        try {
+            ImageScaler.Info info = ImageScaler.info(original);
+            if (!needsPreparing(info, longEdge)) {
+                return new Prepared(null, original, 1);
+            }
+            BufferedImage upright = ImageScaler.readUpright(original, longEdge);
+            byte[] prepared = ImageScaler.writeJpeg(upright, jpegQuality);
+            log.debug("Prepared {}x{} image ({} bytes) as {}x{} ({} bytes)", info.width(), info.height(),
+                    Files.size(original), upright.getWidth(), upright.getHeight(), prepared.length);
+            return new Prepared(prepared, Math.max(1.0, (double) info.longEdge() / longEdge));
+        } catch (Exception e) {
+            log.debug("Sending image file unprocessed: {}", e.toString());
+            return new Prepared(null, original, 1);
+        }
+    }
+
+    private boolean needsPreparing(ImageScaler.Info info, int longEdge) {
+        if (info == null || (info.longEdge() <= longEdge && info.orientation() == 1)) {
+            return false;
+        }
+        if ((long) info.width() * info.height() > maxPixels) {
+            log.debug("Sending {}x{} image unprocessed: over {} pixels", info.width(), info.height(), maxPixels);
+            return false;
+        }
+        return true;
+    }
+}
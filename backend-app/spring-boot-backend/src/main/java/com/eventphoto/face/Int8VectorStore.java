@@ -0,0 +1,73 @@
+package com.eventphoto.face;
+
+import java.util.Arrays;
+
+/**
+ * Scalar quantization to one signed byte per dimension over a fixed symmetric range. The range is fixed rather than
+ * trained so codes never have to be rewritten as an event grows; face encodings stay well inside +-0.5.
+ */
+final class Int8VectorStore extends FaceVectorStore {
+
+    private final byte[] codes;
+    private final float scale;
+
+    Int8VectorStore(int capacity, float range) {
+        this(new byte[capacity * DIM], range / 127f);
+    }
+
+    private Int8VectorStore(byte[] codes, float scale) {
+        this.codes = codes;
+        this.scale = scale;
+    }
+
+    @Override
+    int capacity() {
+        return codes.length / DIM;
+    }
+
+    @Override
+    FaceVectorStore grow(int capacity) {
+        return new Int8VectorStore(Arrays.copyOf(codes, capacity * DIM), scale);
+    }
+
+    @Override
+    void write(int slot, float[] vector) {
+        int offset = slot * DIM;
+        for (int i = 0; i < DIM; i++) {
+            codes[offset + i] = (byte) Math.max(-127, Math.min(127, Math.round(vector[i] / scale)));
+        }
+    }
+
+    @Override
+    float distance(int a, int b) {
+        int sum = 0;
+        int offsetA = a * DIM;
+        int offsetB = b * DIM;
+        for (int i = 0; i < DIM; i++) {
+            int d = codes[offsetA + i] - codes[offsetB + i];
+            sum += d * d;
+        }
+        return sum * scale * scale;
+    }
+
+    @Override
+    Scorer scorer(float[] query) {
+        // Work in code units so the inner loop is a plain byte-to-float difference
+        float[] scaled = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            scaled[i] = query[i] / scale;
+        }
+        float scaleSquared = scale * scale;
+        return slot -> FaceDistance.squaredInt8(scaled, codes, slot * DIM, DIM) * scaleSquared;
+    }
+
+    @Override
+    boolean exact() {
+        return false;
+    }
+
+    @Override
+    int bytesPerVector() {
+        return DIM;
+    }
+}
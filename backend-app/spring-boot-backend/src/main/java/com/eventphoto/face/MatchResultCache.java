@@ -0,0 +1,206 @@
+package com.eventphoto.face;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of guest match results per event, keyed by the SHA-256 of the selfie bytes. A second lookup by
+ * embedding catches the same selfie re-encoded by the client. Entries are patched in place when photos of their event
+ * are indexed, so an upload never leaves a stale result behind.
+ */
+@Component
+public class MatchResultCache {
+
+    private record Key(Integer eventId, String selfieHash) {
+    }
+
+    private static final class Entry {
+        final Key key;
+        final float[] encoding;
+        final float tolerance;
+        final long createdAt;
+        List<FaceMatch> matches;
+
+        Entry(Key key, float[] encoding, float tolerance, List<FaceMatch> matches) {
+            this.key = key;
+            this.encoding = encoding;
+            this.tolerance = tolerance;
+            this.createdAt = System.currentTimeMillis();
+            this.matches = matches;
+        }
+    }
+
+    // Per-event view of the same entries in insertion order; reading it does not disturb the LRU order
+    private final Map<Integer, LinkedHashMap<Key, Entry>> byEvent = new HashMap<>();
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private final LinkedHashMap<Key, Entry> entries;
+
+    @Value("${face-index.match-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    // Two encodings this close come from the same picture; different selfies of one guest are further apart
+    @Value("${face-index.match-cache.near-duplicate-distance:0.06}")
+    private float nearDuplicateDistance;
+
+    public MatchResultCache(@Value("${face-index.match-cache.max-entries:10000}") int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                forget(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    public static String hash(byte[] selfie) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(selfie));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Version of an event's index as seen by the cache; read it before matching and pass it to {@link #put}.
+     */
+    public synchronized long version(Integer eventId) {
+        return versions.getOrDefault(eventId, 0L);
+    }
+
+    public synchronized List<FaceMatch> get(Integer eventId, String selfieHash) {
+        Entry entry = live(new Key(eventId, selfieHash));
+        return entry != null ? entry.matches : null;
+    }
+
+    /**
+     * Looks for a cached selfie of the event whose embedding is within the near-duplicate distance, and remembers
+     * the new hash as an alias for it.
+     */
+    public synchronized List<FaceMatch> getNear(Integer eventId, String selfieHash, float[] encoding) {
+        float limit = nearDuplicateDistance * nearDuplicateDistance;
+        expireOldest(eventId);
+        for (Entry entry : byEvent.getOrDefault(eventId, new LinkedHashMap<>()).values()) {
+            if (entry.encoding != null
+                    && FaceDistance.squared(encoding, entry.encoding, 0, encoding.length) <= limit) {
+                store(new Entry(new Key(eventId, selfieHash), entry.encoding, entry.tolerance, entry.matches));
+                return entry.matches;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches a result unless the event's index changed since {@code version} was read, in which case the result may
+     * already be missing a photo.
+     *
+     * @param encoding the selfie's embedding, or null when no face was found in it
+     */
+    public synchronized void put(Integer eventId, String selfieHash, float[] encoding, float tolerance,
+                                 List<FaceMatch> matches, long version) {
+        if (version(eventId) != version) {
+            return;
+        }
+        store(new Entry(new Key(eventId, selfieHash), encoding, tolerance, List.copyOf(matches)));
+    }
+
+    /**
+     * Re-scores one freshly indexed photo against every cached selfie of the event.
+     */
+    public synchronized void photoIndexed(Integer eventId, int photoId, List<float[]> encodings) {
+        versions.merge(eventId, 1L, Long::sum);
+        for (Entry entry : byEvent.getOrDefault(eventId, new LinkedHashMap<>()).values()) {
+            if (entry.encoding == null) {
+                continue;
+            }
+            FaceMatch best = null;
+            float limit = entry.tolerance * entry.tolerance;
+            for (int i = 0; i < encodings.size(); i++) {
+                float d2 = FaceDistance.squared(entry.encoding, encodings.get(i), 0, entry.encoding.length);
+                if (d2 <= limit && (best == null || d2 < best.distance() * best.distance())) {
+                    best = new FaceMatch(photoId, i, (float) Math.sqrt(d2));
+                }
+            }
+            List<FaceMatch> patched = new ArrayList<>(entry.matches.size() + 1);
+            for (FaceMatch match : entry.matches) {
+                if (match.photoId() != photoId) {
+                    patched.add(match);
+                }
+            }
+            if (best != null) {
+                patched.add(best);
+                patched.sort(FaceMatch.RANKING);
+            }
+            entry.matches = List.copyOf(patched);
+        }
+    }
+
+    public synchronized void invalidate(Integer eventId) {
+        Map<Key, Entry> removed = byEvent.remove(eventId);
+        if (removed != null) {
+            removed.keySet().forEach(entries::remove);
+        }
+        versions.merge(eventId, 1L, Long::sum);
+    }
+
+    private Entry live(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.createdAt > ttlSeconds * 1000) {
+            entries.remove(key);
+            forget(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void store(Entry entry) {
+        entries.put(entry.key, entry);
+        LinkedHashMap<Key, Entry> event = byEvent.computeIfAbsent(entry.key.eventId(), id -> new LinkedHashMap<>());
+        event.remove(entry.key);
+        event.put(entry.key, entry);
+        expireOldest(entry.key.eventId());
+    }
+
+    // Insertion order per event doubles as age order, so expired entries are always at the front
+    private void expireOldest(Integer eventId) {
+        LinkedHashMap<Key, Entry> event = byEvent.get(eventId);
+        if (event == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - ttlSeconds * 1000;
+        Iterator<Entry> oldest = event.values().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next();
+            if (entry.createdAt >= cutoff) {
+                break;
+            }
+            entries.remove(entry.key);
+            oldest.remove();
+        }
+        if (event.isEmpty()) {
+            byEvent.remove(eventId);
+        }
+    }
+
+    private void forget(Key key) {
+        Map<Key, Entry> event = byEvent.get(key.eventId());
+        if (event != null) {
+            event.remove(key);
+            if (event.isEmpty()) {
+                byEvent.remove(key.eventId());
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.eventphoto.face;
+
+import com.eventphoto.repository.FaceEmbeddingBulkRepository.PhotoFaces;
+import com.eventphoto.repository.FaceEmbeddingRepository;
+import com.eventphoto.repository.PhotoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One-time conversion of the face service's legacy {@code faces_index/event_N/photo_{id}_face_{i}.npy} layout into
+ * face_embeddings, the durable store every segment is rebuilt from. Runs at startup when
+ * {@code face-index.npy-import-dir} is set and only imports photos of the event that have nothing stored yet, so it
+ * is safe to leave configured. An event without a segment gets it restored from the database on its first match; an
+ * existing segment has the imported faces appended. The import finishes before the web server starts taking
+ * requests, so no match can load an event's index before its faces are stored.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NpyIndexImporter implements SmartInitializingSingleton {
+
+    private static final Pattern EVENT_DIR = Pattern.compile("event_(\\d+)");
+    private static final Pattern FACE_FILE = Pattern.compile("photo_(\\d+)_face_(\\d+)\\.npy");
+    private static final Pattern DESCR = Pattern.compile("'descr':\\s*'([<>|=]?)([fi])(\\d)'");
+
+    // Photos per face_embeddings transaction
+    private static final int CHUNK = 500;
+
+    private final EmbeddingSegmentStore segmentStore;
+    private final FaceEmbeddingRepository faceEmbeddingRepository;
+    private final PhotoRepository photoRepository;
+
+    @Value("${face-index.npy-import-dir:}")
+    private String importDir;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (importDir == null || importDir.isBlank()) {
+            return;
+        }
+        Path root = Paths.get(importDir);
+        if (!Files.isDirectory(root)) {
+            log.warn("Face index import directory {} does not exist, skipping import", root);
+            return;
+        }
+
+        try (DirectoryStream<Path> events = Files.newDirectoryStream(root)) {
+            for (Path eventDir : events) {
+                Matcher m = EVENT_DIR.matcher(eventDir.getFileName().toString());
+                if (!Files.isDirectory(eventDir) || !m.matches()) {
+                    continue;
+                }
+                Integer eventId = Integer.valueOf(m.group(1));
+                try {
+                    int faces = importEvent(eventId, eventDir);
+                    if (faces > 0) {
+                        log.info("Imported {} legacy face encodings for event {}", faces, eventId);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to import legacy face encodings for event {}: {}", eventId, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to scan face index import directory {}: {}", root, e.getMessage());
+        }
+    }
+
+    private int importEvent(Integer eventId, Path eventDir) throws IOException {
+        // Deleted photos, and photos indexed again since, keep their files but are not imported
+        Set<Integer> pending = photoRepository.findIdsWithoutStoredFacesByEventId(eventId);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        // photoId -> faceNumber -> encoding, ordered so face numbers come out 0..n
+        Map<Integer, TreeMap<Integer, float[]>> photos = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(eventDir, "*.npy")) {
+            for (Path file : files) {
+                Matcher m = FACE_FILE.matcher(file.getFileName().toString());
+                if (!m.matches() || !pending.contains(Integer.valueOf(m.group(1)))) {
+                    continue;
+                }
+                photos.computeIfAbsent(Integer.valueOf(m.group(1)), id -> new TreeMap<>())
+                        .put(Integer.valueOf(m.group(2)), readVector(file));
+            }
+        }
+
+        int count = 0;
+        Map<Integer, List<float[]>> encodingsByPhoto = new LinkedHashMap<>();
+        List<PhotoFaces> chunk = new ArrayList<>(CHUNK);
+        for (Map.Entry<Integer, TreeMap<Integer, float[]>> photo : photos.entrySet()) {
+            List<float[]> encodings = new ArrayList<>(photo.getValue().values());
+            encodingsByPhoto.put(photo.getKey(), encodings);
+            chunk.add(new PhotoFaces(photo.getKey(), encodings, null));
+            count += encodings.size();
+            if (chunk.size() == CHUNK) {
+                faceEmbeddingRepository.replacePhotoFaces(eventId, chunk);
+                chunk.clear();
+            }
+        }
+        faceEmbeddingRepository.replacePhotoFaces(eventId, chunk);
+        if (segmentStore.exists(eventId)) {
+            segmentStore.appendAll(eventId, encodingsByPhoto);
+        }
+        return count;
+    }
+
+    /**
+     * Minimal reader for the 1-d float arrays {@code np.save} writes (format versions 1.0 to 3.0).
+     */
+    static float[] readVector(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.get() != (byte) 0x93 || buffer.get() != 'N' || buffer.get() != 'U') {
+            throw new IOException("Not an .npy file: " + file);
+        }
+        buffer.position(6);
+        int major = buffer.get();
+        buffer.get();
+        int headerLength = major == 1 ? Short.toUnsignedInt(buffer.getShort()) : buffer.getInt();
+        byte[] headerBytes = new byte[headerLength];
+        buffer.get(headerBytes);
+        String header = new String(headerBytes, StandardCharsets.ISO_8859_1);
+
+        Matcher descr = DESCR.matcher(header);
+        if (!descr.find() || !"f".equals(descr.group(2))) {
+            throw new IOException("Unsupported dtype in " + file + ": " + header.trim());
+        }
+        if (">".equals(descr.group(1))) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        }
+        int width = Integer.parseInt(descr.group(3));
+        if (width != Float.BYTES && width != Double.BYTES) {
+            throw new IOException("Unsupported float width in " + file + ": " + width);
+        }
+        int length = buffer.remaining() / width;
+
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = width == 8 ? (float) buffer.getDouble() : buffer.getFloat();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,151 @@
+package com.eventphoto.face;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product quantization: each vector is split into {@code subspaces} chunks and every chunk is replaced by the id of
+ * the nearest of 256 centroids, so a face costs one byte per subspace. Codebooks are trained per event with k-means
+ * and kept for the lifetime of the in-memory index; later faces are encoded against them.
+ */
+final class PqVectorStore extends FaceVectorStore {
+
+    static final int CENTROIDS = 256;
+    private static final int KMEANS_ITERATIONS = 12;
+
+    private final int subspaces;
+    private final int subDim;
+    private final float[][] codebooks;
+    private final byte[] codes;
+
+    private PqVectorStore(int subspaces, float[][] codebooks, byte[] codes) {
+        this.subspaces = subspaces;
+        this.subDim = DIM / subspaces;
+        this.codebooks = codebooks;
+        this.codes = codes;
+    }
+
+    /**
+     * Trains codebooks on {@code count} row-major samples and returns an empty store of the given capacity.
+     */
+    static PqVectorStore train(int subspaces, float[] samples, int count, int capacity, long seed) {
+        if (DIM % subspaces != 0) {
+            throw new IllegalArgumentException(DIM + " dimensions cannot be split into " + subspaces + " subspaces");
+        }
+        if (count < CENTROIDS) {
+            throw new IllegalArgumentException("Need at least " + CENTROIDS + " samples, got " + count);
+        }
+        int subDim = DIM / subspaces;
+        Random random = new Random(seed);
+        float[][] codebooks = new float[subspaces][];
+        for (int j = 0; j < subspaces; j++) {
+            codebooks[j] = kMeans(samples, count, j * subDim, subDim, random);
+        }
+        return new PqVectorStore(subspaces, codebooks, new byte[capacity * subspaces]);
+    }
+
+    @Override
+    int capacity() {
+        return codes.length / subspaces;
+    }
+
+    @Override
+    FaceVectorStore grow(int capacity) {
+        return new PqVectorStore(subspaces, codebooks, Arrays.copyOf(codes, capacity * subspaces));
+    }
+
+    @Override
+    void write(int slot, float[] vector) {
+        for (int j = 0; j < subspaces; j++) {
+            codes[slot * subspaces + j] = (byte) nearest(codebooks[j], vector, j * subDim, subDim);
+        }
+    }
+
+    @Override
+    float distance(int a, int b) {
+        float sum = 0f;
+        for (int j = 0; j < subspaces; j++) {
+            int ca = codes[a * subspaces + j] & 0xff;
+            int cb = codes[b * subspaces + j] & 0xff;
+            sum += FaceDistance.squared(codebooks[j], ca * subDim, codebooks[j], cb * subDim, subDim);
+        }
+        return sum;
+    }
+
+    @Override
+    Scorer scorer(float[] query) {
+        // Asymmetric distance: the query stays exact, each slot is a sum of table lookups
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int j = 0; j < subspaces; j++) {
+            for (int c = 0; c < CENTROIDS; c++) {
+                table[j * CENTROIDS + c] = FaceDistance.squared(query, j * subDim, codebooks[j], c * subDim, subDim);
+            }
+        }
+        return slot -> {
+            float sum = 0f;
+            int offset = slot * subspaces;
+            for (int j = 0; j < subspaces; j++) {
+                sum += table[j * CENTROIDS + (codes[offset + j] & 0xff)];
+            }
+            return sum;
+        };
+    }
+
+    @Override
+    boolean exact() {
+        return false;
+    }
+
+    @Override
+    int bytesPerVector() {
+        return subspaces;
+    }
+
+    private static float[] kMeans(float[] samples, int count, int start, int subDim, Random random) {
+        float[] centroids = new float[CENTROIDS * subDim];
+        int[] picks = random.ints(0, count).distinct().limit(CENTROIDS).toArray();
+        for (int c = 0; c < CENTROIDS; c++) {
+            System.arraycopy(samples, picks[c] * DIM + start, centroids, c * subDim, subDim);
+        }
+
+        int[] assignment = new int[count];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            for (int s = 0; s < count; s++) {
+                assignment[s] = nearest(centroids, samples, s * DIM + start, subDim);
+            }
+            float[] sums = new float[CENTROIDS * subDim];
+            int[] sizes = new int[CENTROIDS];
+            for (int s = 0; s < count; s++) {
+                int c = assignment[s];
+                sizes[c]++;
+                for (int d = 0; d < subDim; d++) {
+                    sums[c * subDim + d] += samples[s * DIM + start + d];
+                }
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (sizes[c] == 0) {
+                    // Re-seed empty clusters so all 256 codes stay useful
+                    System.arraycopy(samples, random.nextInt(count) * DIM + start, centroids, c * subDim, subDim);
+                    continue;
+                }
+                for (int d = 0; d < subDim; d++) {
+                    centroids[c * subDim + d] = sums[c * subDim + d] / sizes[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearest(float[] centroids, float[] vector, int offset, int subDim) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < CENTROIDS; c++) {
+            float d = FaceDistance.squared(vector, offset, centroids, c * subDim, subDim);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
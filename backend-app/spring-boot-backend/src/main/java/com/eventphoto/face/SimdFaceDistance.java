@@ -0,0 +1,60 @@
+package com.eventphoto.face;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Only loaded through FaceDistance once the incubator module is known to be present
+final class SimdFaceDistance {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // One byte lane per float lane; there is no byte shape narrower than 64 bits
+    private static final VectorSpecies<Byte> BYTE_SPECIES = SPECIES.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * 8))
+            : null;
+
+    private SimdFaceDistance() {
+    }
+
+    static float squared(float[] a, int aOffset, float[] b, int bOffset, int dimensions) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(dimensions);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            FloatVector d = va.sub(vb);
+            acc = d.fma(d, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dimensions; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    static float squaredInt8(float[] scaledQuery, byte[] codes, int offset, int dimensions) {
+        if (BYTE_SPECIES == null) {
+            return FaceDistance.scalarSquaredInt8(scaledQuery, codes, offset, dimensions);
+        }
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(dimensions);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector q = FloatVector.fromArray(SPECIES, scaledQuery, i);
+            FloatVector c = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, offset + i)
+                    .convertShape(VectorOperators.B2F, SPECIES, 0);
+            FloatVector d = q.sub(c);
+            acc = d.fma(d, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dimensions; i++) {
+            float d = scaledQuery[i] - codes[offset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,236 @@
+package com.eventphoto.fake;
+
+import com.eventphoto.entity.Photo;
+import com.eventphoto.repository.PhotoRepository;
+import com.eventphoto.storage.PhotoStorage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the Python face service, enabled by the {@code fake-face} profile. It listens on
+ * {@code fake-face.port} and answers /index-faces, /embed-face and /delete-event-faces like the real service, with
+ * {@link SyntheticFaces} embeddings and a configurable latency. Going over HTTP keeps the backend's real client,
+ * timeouts and circuit breakers in the measured path.
+ *
+ * <p>The people in an indexed photo are looked up by its photo id, from its synthetic Drive file id or the comment
+ * of its stored original, because the image the backend sends may have been re-encoded. Selfies are small enough to
+ * arrive unchanged and are read as they are.
+ */
+@Component
+@Profile("fake-face")
+@RequiredArgsConstructor
+@Slf4j
+public class FakeFaceService {
+
+    private static final Pattern NAME = Pattern.compile("name=\"([^\"]*)\"");
+
+    // Synthetic images carry their comment right after the start-of-image marker
+    private static final int ORIGINAL_HEADER_BYTES = 4096;
+
+    private final ObjectMapper objectMapper;
+    private final PhotoRepository photoRepository;
+    private final PhotoStorage photoStorage;
+    private HttpServer server;
+    private ExecutorService workers;
+
+    @Value("${fake-face.port:5055}")
+    private int port;
+
+    // Fixed cost of every request
+    @Value("${fake-face.latency-ms:30}")
+    private long latencyMs;
+
+    // Detection cost of every image in an index batch
+    @Value("${fake-face.per-image-ms:120}")
+    private long perImageMs;
+
+    @Value("${fake-face.jitter-ms:20}")
+    private long jitterMs;
+
+    // Requests served in parallel, like the real service's worker processes
+    @Value("${fake-face.workers:4}")
+    private int workerCount;
+
+    private record Part(String name, byte[] content) {
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "fake-face-service");
+            t.setDaemon(true);
+            return t;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        server.setExecutor(workers);
+        server.createContext("/index-faces", this::indexFaces);
+        server.createContext("/embed-face", this::embedFace);
+        server.createContext("/delete-event-faces/", exchange -> respond(exchange, 200, Map.of("status", "success")));
+        server.createContext("/health", exchange -> respond(exchange, 200, Map.of("status", "ok")));
+        server.start();
+        log.info("Fake face service listening on port {} ({} workers, {} ms + {} ms per image)", port, workerCount,
+                latencyMs, perImageMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void indexFaces(HttpExchange exchange) throws IOException {
+        List<Part> parts = parts(exchange);
+        List<Integer> photoIds = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.name().equals("photo_ids")) {
+                photoIds.add(Integer.parseInt(new String(part.content(), StandardCharsets.UTF_8).trim()));
+            } else if (part.name().equals("images")) {
+                images.add(part.content());
+            }
+        }
+        simulateWork(latencyMs + perImageMs * images.size());
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(photoIds.size(), images.size()); i++) {
+            long[] persons = persons(photoIds.get(i), images.get(i));
+            long sampleSeed = Arrays.hashCode(images.get(i));
+            List<float[]> encodings = new ArrayList<>();
+            List<int[]> locations = new ArrayList<>();
+            for (int f = 0; f < persons.length; f++) {
+                encodings.add(SyntheticFaces.embedding(persons[f], sampleSeed * 31 + f));
+                locations.add(new int[]{40 + f * 10, 160 + f * 140, 160 + f * 10, 40 + f * 140});
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("photo_id", photoIds.get(i));
+            result.put("faces_detected", encodings.size());
+            result.put("encodings", encodings);
+            result.put("locations", locations);
+            results.add(result);
+        }
+        respond(exchange, 200, Map.of("results", results));
+    }
+
+    private void embedFace(HttpExchange exchange) throws IOException {
+        List<Part> parts = parts(exchange);
+        simulateWork(latencyMs);
+        byte[] image = parts.stream().filter(part -> part.name().equals("image")).findFirst()
+                .map(Part::content).orElse(new byte[0]);
+        long[] persons = SyntheticFaces.persons(image);
+        if (persons.length == 0) {
+            respond(exchange, 400, Map.of("detail", "No face detected in the image"));
+            return;
+        }
+        respond(exchange, 200, Map.of("encoding", SyntheticFaces.embedding(persons[0], Arrays.hashCode(image))));
+    }
+
+    // People in the photo as uploaded; the image received is only used when the photo cannot be looked up
+    private long[] persons(Integer photoId, byte[] image) {
+        Photo photo = photoRepository.findById(photoId).orElse(null);
+        if (photo != null) {
+            long[] synthetic = SyntheticFaces.personsOfDriveFile(photo.getDriveFileId());
+            if (synthetic != null) {
+                return synthetic;
+            }
+            if (photo.getStorageStatus() != Photo.StorageStatus.PENDING_STORAGE) {
+                try (InputStream original = photoStorage.openRange(photo.getDriveFileId(), 0, ORIGINAL_HEADER_BYTES)) {
+                    long[] named = SyntheticFaces.namedPersons(original.readAllBytes());
+                    if (named != null) {
+                        return named;
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not read the original of photo {}: {}", photoId, e.toString());
+                }
+            }
+        }
+        return SyntheticFaces.persons(image);
+    }
+
+    private void simulateWork(long millis) {
+        long jitter = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0;
+        try {
+            Thread.sleep(millis + jitter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static List<Part> parts(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        List<Part> parts = new ArrayList<>();
+        int boundaryAt = contentType != null ? contentType.indexOf("boundary=") : -1;
+        if (boundaryAt < 0) {
+            return parts;
+        }
+        byte[] delimiter = ("--" + contentType.substring(boundaryAt + 9)).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+        int at = indexOf(body, delimiter, 0);
+        while (at >= 0) {
+            int start = at + delimiter.length;
+            if (start + 1 >= body.length || (body[start] == '-' && body[start + 1] == '-')) {
+                break;
+            }
+            int headersEnd = indexOf(body, headerEnd, start);
+            int next = headersEnd < 0 ? -1 : indexOf(body, delimiter, headersEnd + 4);
+            if (next < 0) {
+                break;
+            }
+            String headers = new String(body, start, headersEnd - start, StandardCharsets.ISO_8859_1);
+            Matcher name = NAME.matcher(headers);
+            if (name.find()) {
+                // Content ends before the CRLF that precedes the next delimiter
+                parts.add(new Part(name.group(1), Arrays.copyOfRange(body, headersEnd + 4, next - 2)));
+            }
+            at = next;
+        }
+        return parts;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
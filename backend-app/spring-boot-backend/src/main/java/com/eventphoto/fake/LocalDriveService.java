@@ -0,0 +1,50 @@
+package com.eventphoto.fake;
+
+import com.eventphoto.storage.FileSystemPhotoStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Google Drive stand-in for the {@code fake-drive} profile: the file system storage under {@code fake-drive.dir},
+ * so uploads and downloads need no Google account whatever {@code photo-storage.type} says. File ids made by
+ * {@link SyntheticFaces#driveFileId} are served as generated images without any file on disk.
+ */
+@Service
+@Profile("fake-drive")
+public class LocalDriveService extends FileSystemPhotoStorage {
+
+    // Size of images generated for synthetic file ids
+    @Value("${fake-drive.synthetic-image-size:64}")
+    private int syntheticImageSize;
+
+    public LocalDriveService(@Value("${fake-drive.dir:${java.io.tmpdir}/eventphoto-drive}") String dir) {
+        super(dir);
+    }
+
+    @Override
+    public InputStream open(String fileId) throws IOException {
+        byte[] synthetic = synthetic(fileId);
+        return synthetic != null ? new ByteArrayInputStream(synthetic) : super.open(fileId);
+    }
+
+    @Override
+    public InputStream openRange(String fileId, long offset, long length) throws IOException {
+        byte[] synthetic = synthetic(fileId);
+        if (synthetic == null) {
+            return super.openRange(fileId, offset, length);
+        }
+        int start = (int) Math.min(offset, synthetic.length);
+        return new ByteArrayInputStream(synthetic, start, (int) Math.min(length, synthetic.length - start));
+    }
+
+    private byte[] synthetic(String fileId) {
+        long[] persons = SyntheticFaces.personsOfDriveFile(fileId);
+        return persons == null ? null
+                : SyntheticFaces.image(syntheticImageSize, syntheticImageSize, fileId.hashCode(), persons);
+    }
+}
@@ -0,0 +1,156 @@
+package com.eventphoto.fake;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.StringJoiner;
+
+/**
+ * Deterministic stand-in for face detection. Every synthetic person has a fixed random 128-d unit vector; each face
+ * of that person in a photo is the vector plus a little noise. Two faces of the same person end up about 0.2 apart
+ * and faces of different people about 1.4 apart, so matching at the usual 0.5 tolerance behaves like the real thing.
+ *
+ * <p>Synthetic images are real JPEGs that name the people in them in a comment segment ({@code synthface:1,2,3}).
+ * Any other image gets 0 to 3 strangers derived from its bytes. The backend re-encodes large photos before detection,
+ * which drops the comment, so {@link FakeFaceService} reads it from the stored original of the photo it indexes.
+ */
+public final class SyntheticFaces {
+
+    public static final int DIMENSIONS = 128;
+
+    private static final String MARKER = "synthface:";
+    private static final String DRIVE_PREFIX = "synthetic-";
+    private static final double SAME_PERSON_SPREAD = 0.012;
+
+    private SyntheticFaces() {
+    }
+
+    public static float[] embedding(long personId, long sampleSeed) {
+        Random identity = new Random(personId * 0x9E3779B97F4A7C15L + 17);
+        Random sample = new Random(sampleSeed);
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) identity.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) (vector[i] / norm + sample.nextGaussian() * SAME_PERSON_SPREAD);
+        }
+        return vector;
+    }
+
+    /**
+     * People in the image in face order: the ones it names, or strangers derived from its bytes.
+     */
+    public static long[] persons(byte[] image) {
+        long[] named = namedPersons(image);
+        if (named != null) {
+            return named;
+        }
+        int hash = Arrays.hashCode(image);
+        long[] strangers = new long[Math.floorMod(hash, 4)];
+        for (int i = 0; i < strangers.length; i++) {
+            // Negative ids never collide with generated people
+            strangers[i] = -1L - Math.floorMod((long) hash * 31 + i, 1_000_000_000L);
+        }
+        return strangers;
+    }
+
+    /**
+     * People named by the comment of a synthetic image, or null when {@code image} (or its start) has none.
+     */
+    public static long[] namedPersons(byte[] image) {
+        int at = indexOf(image, MARKER.getBytes(StandardCharsets.US_ASCII));
+        if (at < 0) {
+            return null;
+        }
+        int start = at + MARKER.length();
+        int end = start;
+        while (end < image.length && (Character.isDigit(image[end]) || image[end] == ',' || image[end] == '-')) {
+            end++;
+        }
+        String list = new String(image, start, end - start, StandardCharsets.US_ASCII);
+        return list.isEmpty() ? new long[0] : Arrays.stream(list.split(",")).mapToLong(Long::parseLong).toArray();
+    }
+
+    /**
+     * A JPEG of noise naming {@code personIds}; larger dimensions give the file size of a real photo.
+     */
+    public static byte[] image(int width, int height, long seed, long... personIds) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", jpeg);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] encoded = jpeg.toByteArray();
+
+        // Comment segment right after the start-of-image marker
+        byte[] comment = (MARKER + join(personIds)).getBytes(StandardCharsets.US_ASCII);
+        int length = comment.length + 2;
+        byte[] result = new byte[encoded.length + 4 + comment.length];
+        result[0] = encoded[0];
+        result[1] = encoded[1];
+        result[2] = (byte) 0xFF;
+        result[3] = (byte) 0xFE;
+        result[4] = (byte) (length >> 8);
+        result[5] = (byte) length;
+        System.arraycopy(comment, 0, result, 6, comment.length);
+        System.arraycopy(encoded, 2, result, 6 + comment.length, encoded.length - 2);
+        return result;
+    }
+
+    /**
+     * Drive file id that the local Drive stand-in turns into a small synthetic image on download, so generated
+     * events need no files on disk.
+     */
+    public static String driveFileId(long... personIds) {
+        return DRIVE_PREFIX + join(personIds).replace(',', '-');
+    }
+
+    /**
+     * People named by a {@link #driveFileId}, or null for any other id.
+     */
+    public static long[] personsOfDriveFile(String fileId) {
+        if (!fileId.startsWith(DRIVE_PREFIX)) {
+            return null;
+        }
+        String list = fileId.substring(DRIVE_PREFIX.length());
+        return list.isEmpty() ? new long[0] : Arrays.stream(list.split("-")).mapToLong(Long::parseLong).toArray();
+    }
+
+    private static String join(long[] personIds) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (long personId : personIds) {
+            joiner.add(Long.toString(personId));
+        }
+        return joiner.toString();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,211 @@
+package com.eventphoto.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+
+/**
+ * Downscaling of uploaded photos with ImageIO. JPEGs are decoded with source subsampling, so a 24 MP photo never
+ * becomes a full-size raster, and turned upright according to their EXIF orientation.
+ */
+public final class ImageScaler {
+
+    // JPEG headers up to the image data: EXIF with its thumbnail and ICC profile
+    private static final int HEADER_BYTES = 1 << 20;
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Stored size of an image (before orientation) and its EXIF orientation, 1 to 8.
+     */
+    public record Info(int width, int height, int orientation) {
+
+        public int longEdge() {
+            return Math.max(width, height);
+        }
+    }
+
+    /**
+     * Reads the size from the image header without decoding the pixels.
+     *
+     * @return null when ImageIO cannot read the image
+     */
+    public static Info info(byte[] data) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return info(input, JpegSegments.exifOrientation(data));
+        }
+    }
+
+    /**
+     * Reads the size from the header of an image file; only the header is read.
+     */
+    public static Info info(Path file) throws IOException {
+        try (ImageInputStream input = new FileImageInputStream(file.toFile())) {
+            return info(input, JpegSegments.exifOrientation(header(file)));
+        }
+    }
+
+    private static Info info(ImageInputStream input, int orientation) throws IOException {
+        ImageReader reader = reader(input);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            return new Info(reader.getWidth(0), reader.getHeight(0), orientation);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * When the photo was taken according to its EXIF DateTimeOriginal, in the camera's local time; null when the
+     * file has none. Only the header is read.
+     */
+    public static LocalDateTime captureTime(Path file) throws IOException {
+        return JpegSegments.exifDateTimeOriginal(header(file));
+    }
+
+    /**
+     * Decodes the image upright with its long edge scaled down to at most {@code longEdge}.
+     *
+     * @return null when ImageIO cannot read the image
+     */
+    public static BufferedImage readUpright(byte[] data, int longEdge) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return readUpright(input, JpegSegments.exifOrientation(data), longEdge);
+        }
+    }
+
+    /**
+     * Decodes an image file upright, reading it from disk rather than holding it in memory.
+     */
+    public static BufferedImage readUpright(Path file, int longEdge) throws IOException {
+        try (ImageInputStream input = new FileImageInputStream(file.toFile())) {
+            return readUpright(input, JpegSegments.exifOrientation(header(file)), longEdge);
+        }
+    }
+
+    private static BufferedImage readUpright(ImageInputStream input, int orientation, int longEdge)
+            throws IOException {
+        ImageReader reader = reader(input);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int originalLongEdge = Math.max(width, height);
+
+            // Decode every n-th pixel, staying at or above the target size
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = Math.max(1, originalLongEdge / longEdge);
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            BufferedImage decoded = reader.read(0, param);
+
+            double scale = Math.max(1.0, (double) originalLongEdge / longEdge);
+            return draw(decoded, Math.max(1, (int) Math.round(width / scale)),
+                    Math.max(1, (int) Math.round(height / scale)), orientation);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Scales an upright image down so its long edge is at most {@code longEdge}; smaller images are returned as is.
+     */
+    public static BufferedImage scaleDown(BufferedImage image, int longEdge) {
+        double scale = (double) Math.max(image.getWidth(), image.getHeight()) / longEdge;
+        if (scale <= 1) {
+            return image;
+        }
+        return draw(image, Math.max(1, (int) Math.round(image.getWidth() / scale)),
+                Math.max(1, (int) Math.round(image.getHeight() / scale)), 1);
+    }
+
+    /**
+     * Encodes the image as a JPEG.
+     */
+    public static byte[] writeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The start of an image file, enough to hold its metadata segments (EXIF) but not its pixels.
+     */
+    public static byte[] header(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(HEADER_BYTES);
+        }
+    }
+
+    private static ImageReader reader(ImageInputStream input) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    // Scales the image to width x height (before rotation) and applies the EXIF orientation in one pass
+    private static BufferedImage draw(BufferedImage source, int width, int height, int orientation) {
+        boolean swap = orientation >= 5 && orientation <= 8;
+        BufferedImage target = new BufferedImage(swap ? height : width, swap ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);
+            default -> new AffineTransform();
+        };
+        transform.concatenate(AffineTransform.getScaleInstance(
+                (double) width / source.getWidth(), (double) height / source.getHeight()));
+
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,182 @@
+package com.eventphoto.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads the marker segments in front of a JPEG's image data, without decoding it.
+ */
+final class JpegSegments {
+
+    private static final int SOI = 0xD8;
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    private static final int APP1 = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final int EXIF_IFD_TAG = 0x8769;
+    private static final int DATE_TIME_ORIGINAL_TAG = 0x9003;
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private JpegSegments() {
+    }
+
+    @FunctionalInterface
+    private interface SegmentVisitor {
+        // offset and length of the segment payload, after its length field
+        void visit(int marker, int offset, int length);
+    }
+
+    /**
+     * EXIF orientation (1 to 8), or 1 when the image is not a JPEG or has none.
+     */
+    static int exifOrientation(byte[] jpeg) {
+        int[] orientation = {1};
+        forEachSegment(jpeg, (marker, offset, length) -> {
+            if (marker == APP1 && length > 14 && jpeg[offset] == 'E' && jpeg[offset + 1] == 'x'
+                    && jpeg[offset + 2] == 'i' && jpeg[offset + 3] == 'f') {
+                int value = tiffOrientation(ByteBuffer.wrap(jpeg, offset + 6, length - 6).slice());
+                if (value >= 1 && value <= 8) {
+                    orientation[0] = value;
+                }
+            }
+        });
+        return orientation[0];
+    }
+
+    /**
+     * EXIF DateTimeOriginal, the camera's local time of capture, or null when the image has none.
+     */
+    static LocalDateTime exifDateTimeOriginal(byte[] jpeg) {
+        LocalDateTime[] captured = {null};
+        forEachSegment(jpeg, (marker, offset, length) -> {
+            if (marker == APP1 && length > 14 && jpeg[offset] == 'E' && jpeg[offset + 1] == 'x'
+                    && jpeg[offset + 2] == 'i' && jpeg[offset + 3] == 'f') {
+                captured[0] = tiffDateTimeOriginal(ByteBuffer.wrap(jpeg, offset + 6, length - 6).slice());
+            }
+        });
+        return captured[0];
+    }
+
+    private static boolean isJpeg(byte[] data) {
+        return data.length > 4 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == SOI;
+    }
+
+    private static void forEachSegment(byte[] jpeg, SegmentVisitor visitor) {
+        if (!isJpeg(jpeg)) {
+            return;
+        }
+        int position = 2;
+        while (position + 4 <= jpeg.length) {
+            if ((jpeg[position] & 0xFF) != 0xFF) {
+                return;
+            }
+            int marker = jpeg[position + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == SOS || marker == EOI) {
+                return;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+            int length = ((jpeg[position + 2] & 0xFF) << 8) | (jpeg[position + 3] & 0xFF);
+            if (length < 2 || position + 2 + length > jpeg.length) {
+                return;
+            }
+            visitor.visit(marker, position + 4, length - 2);
+            position += 2 + length;
+        }
+    }
+
+    private static LocalDateTime tiffDateTimeOriginal(ByteBuffer tiff) {
+        if (tiff.remaining() < 8) {
+            return null;
+        }
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return null;
+        }
+        // DateTimeOriginal lives in the Exif sub-IFD that IFD0 points to
+        int exifIfd = ifdEntryValue(tiff, tiff.getInt(4), EXIF_IFD_TAG);
+        if (exifIfd < 0) {
+            return null;
+        }
+        int entry = ifdEntry(tiff, exifIfd, DATE_TIME_ORIGINAL_TAG);
+        // ASCII "yyyy:MM:dd HH:mm:ss" plus its terminator, stored at the offset in the value field
+        if (entry < 0 || (tiff.getShort(entry + 2) & 0xFFFF) != 2 || tiff.getInt(entry + 4) < 19) {
+            return null;
+        }
+        int value = tiff.getInt(entry + 8);
+        if (value < 8 || value + 19 > tiff.limit()) {
+            return null;
+        }
+        byte[] text = new byte[19];
+        tiff.get(value, text);
+        try {
+            return LocalDateTime.parse(new String(text, StandardCharsets.US_ASCII), EXIF_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            // Cameras without a set clock write blanks or zeros
+            return null;
+        }
+    }
+
+    // Position of the IFD entry with the tag, or -1
+    private static int ifdEntry(ByteBuffer tiff, int ifd, int tag) {
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return -1;
+        }
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                break;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // LONG value of the IFD entry with the tag, or -1
+    private static int ifdEntryValue(ByteBuffer tiff, int ifd, int tag) {
+        int entry = ifdEntry(tiff, ifd, tag);
+        return entry < 0 ? -1 : tiff.getInt(entry + 8);
+    }
+
+    private static int tiffOrientation(ByteBuffer tiff) {
+        if (tiff.remaining() < 8) {
+            return 1;
+        }
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return 1;
+        }
+        int ifd = tiff.getInt(4);
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return 1;
+        }
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                break;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                // SHORT value, left-aligned in the 4-byte value field
+                return tiff.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        return 1;
+    }
+}
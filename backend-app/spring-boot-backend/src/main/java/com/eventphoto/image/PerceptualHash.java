@@ -0,0 +1,59 @@
+package com.eventphoto.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Difference hash (dHash) of a photo: the image is averaged down to 9x8 grey cells and each bit says whether a cell
+ * is brighter than its right neighbour. Frames of the same burst differ in a few bits, unrelated photos in about half.
+ */
+public final class PerceptualHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hashes an upright image. Pass a small copy: every pixel is read.
+     */
+    public static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] counts = new int[COLUMNS * ROWS];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellRow = y * ROWS / height * COLUMNS;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luma = (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF)) / 1000;
+                int cell = cellRow + x * COLUMNS / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS - 1; x++) {
+                hash = hash << 1 | (mean(sums, counts, y * COLUMNS + x) > mean(sums, counts, y * COLUMNS + x + 1)
+                        ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Number of differing bits between two hashes.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // Cells of images narrower than the grid stay empty and count as black
+    private static double mean(long[] sums, int[] counts, int cell) {
+        return counts[cell] == 0 ? 0 : (double) sums[cell] / counts[cell];
+    }
+}
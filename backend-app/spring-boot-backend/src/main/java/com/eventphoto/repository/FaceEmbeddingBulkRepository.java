@@ -0,0 +1,28 @@
+package com.eventphoto.repository;
+
+import java.util.List;
+
+/**
+ * Bulk access to face_embeddings that bypasses entity mapping: batched inserts on the write side and a single
+ * streamed query into primitive arrays on the read side.
+ */
+public interface FaceEmbeddingBulkRepository {
+
+    record PhotoFaces(Integer photoId, List<float[]> encodings, List<int[]> locations) {
+    }
+
+    /**
+     * Every face of an event, ordered by photo id and face number; vector {@code i} starts at
+     * {@code vectors[i * dimensions]}.
+     */
+    record PackedEmbeddings(int count, int[] photoIds, int[] faceNumbers, float[] vectors) {
+    }
+
+    /**
+     * Replaces the stored faces of the given photos in one transaction and records their face counts. A photo with
+     * no encodings just loses its old rows and gets a count of zero.
+     */
+    void replacePhotoFaces(Integer eventId, List<PhotoFaces> photos);
+
+    PackedEmbeddings loadEventEmbeddings(Integer eventId, int dimensions);
+}
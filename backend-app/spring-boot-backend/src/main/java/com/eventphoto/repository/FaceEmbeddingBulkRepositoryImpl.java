@@ -0,0 +1,95 @@
+package com.eventphoto.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FaceEmbeddingBulkRepositoryImpl implements FaceEmbeddingBulkRepository {
+
+    private static final String INSERT = "INSERT INTO face_embeddings "
+            + "(photo_id, event_id, face_number, embedding, box_top, box_right, box_bottom, box_left, "
+            + "embedding_path, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public FaceEmbeddingBulkRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        // Makes MySQL Connector/J stream rows instead of buffering the whole result set
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Override
+    @Transactional
+    public void replacePhotoFaces(Integer eventId, List<PhotoFaces> photos) {
+        if (photos.isEmpty()) {
+            return;
+        }
+        String ids = photos.stream().map(p -> String.valueOf(p.photoId())).collect(Collectors.joining(","));
+        jdbcTemplate.update("DELETE FROM face_embeddings WHERE photo_id IN (" + ids + ")");
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>();
+        for (PhotoFaces photo : photos) {
+            for (int i = 0; i < photo.encodings().size(); i++) {
+                int[] box = photo.locations() != null && i < photo.locations().size()
+                        ? photo.locations().get(i)
+                        : null;
+                rows.add(new Object[]{
+                        photo.photoId(), eventId, i, pack(photo.encodings().get(i)),
+                        box != null ? box[0] : null, box != null ? box[1] : null,
+                        box != null ? box[2] : null, box != null ? box[3] : null,
+                        "event_" + eventId + "/photo_" + photo.photoId() + "_face_" + i,
+                        now});
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        }
+        jdbcTemplate.batchUpdate("UPDATE photos SET face_count = ? WHERE id = ?", photos.stream()
+                .map(photo -> new Object[]{photo.encodings().size(), photo.photoId()})
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public PackedEmbeddings loadEventEmbeddings(Integer eventId, int dimensions) {
+        int[][] ids = {new int[256], new int[256]};
+        float[][] vectors = {new float[256 * dimensions]};
+        int[] count = {0};
+        streamingJdbcTemplate.query(
+                "SELECT photo_id, face_number, embedding FROM face_embeddings WHERE event_id = ? "
+                        + "ORDER BY photo_id, face_number",
+                rs -> {
+                    int n = count[0];
+                    if (n == ids[0].length) {
+                        ids[0] = Arrays.copyOf(ids[0], n * 2);
+                        ids[1] = Arrays.copyOf(ids[1], n * 2);
+                        vectors[0] = Arrays.copyOf(vectors[0], n * 2 * dimensions);
+                    }
+                    ids[0][n] = rs.getInt(1);
+                    ids[1][n] = rs.getInt(2);
+                    ByteBuffer.wrap(rs.getBytes(3)).order(ByteOrder.LITTLE_ENDIAN)
+                            .asFloatBuffer()
+                            .get(vectors[0], n * dimensions, dimensions);
+                    count[0] = n + 1;
+                },
+                eventId);
+        return new PackedEmbeddings(count[0], ids[0], ids[1], vectors[0]);
+    }
+
+    private static byte[] pack(float[] encoding) {
+        ByteBuffer buffer = ByteBuffer.allocate(encoding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(encoding);
+        return buffer.array();
+    }
+}
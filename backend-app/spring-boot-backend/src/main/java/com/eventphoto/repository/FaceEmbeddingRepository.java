@@ -2,11 +2,24 @@ package com.eventphoto.repository;
 
 import com.eventphoto.entity.FaceEmbedding;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.List;
+import java.util.Set;
 
 @Repository
-public interface FaceEmbeddingRepository extends JpaRepository<FaceEmbedding, Integer> {
-    Optional<FaceEmbedding> findByPhotoId(Integer photoId);
+public interface FaceEmbeddingRepository extends JpaRepository<FaceEmbedding, Integer>, FaceEmbeddingBulkRepository {
+    List<FaceEmbedding> findByPhotoId(Integer photoId);
+
+    @Query("SELECT DISTINCT f.photo.id FROM FaceEmbedding f WHERE f.event.id = :eventId")
+    Set<Integer> findPhotoIdsByEventId(@Param("eventId") Integer eventId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM FaceEmbedding f WHERE f.event.id = :eventId")
+    int deleteByEventId(@Param("eventId") Integer eventId);
 }
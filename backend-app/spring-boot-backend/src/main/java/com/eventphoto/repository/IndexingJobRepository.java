@@ -0,0 +1,79 @@
+package com.eventphoto.repository;
+
+import com.eventphoto.entity.IndexingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Native MySQL queries throughout: claiming needs FOR UPDATE SKIP LOCKED, and every lease and backoff timestamp is
+ * taken from the database clock so that nodes with skewed clocks agree on when a lease ran out.
+ */
+@Repository
+public interface IndexingJobRepository extends JpaRepository<IndexingJob, Long> {
+
+    /**
+     * Queues the photos, or resets their jobs to a fresh pending state when they are already queued or failed.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO indexing_jobs "
+            + "(event_id, photo_id, priority, attempts, status, next_attempt_at, created_at) "
+            + "SELECT p.event_id, p.id, :priority, 0, 'PENDING', NOW(), NOW() FROM photos p WHERE p.id IN :photoIds "
+            + "ON DUPLICATE KEY UPDATE status = 'PENDING', attempts = 0, next_attempt_at = NOW(), "
+            + "lease_expires_at = NULL, lease_token = NULL, last_error = NULL, "
+            + "priority = GREATEST(priority, VALUES(priority))", nativeQuery = true)
+    int enqueue(@Param("photoIds") Collection<Integer> photoIds, @Param("priority") int priority);
+
+    /**
+     * Queues every unindexed photo that has no job yet, e.g. uploads lost before the queue existed. Staged photos
+     * are queued once they reach Drive.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO indexing_jobs "
+            + "(event_id, photo_id, priority, attempts, status, next_attempt_at, created_at) "
+            + "SELECT p.event_id, p.id, :priority, 0, 'PENDING', NOW(), NOW() FROM photos p WHERE p.indexed = false "
+            + "AND (p.storage_status IS NULL OR p.storage_status <> 'PENDING_STORAGE')",
+            nativeQuery = true)
+    int enqueueUnindexed(@Param("priority") int priority);
+
+    // Only call inside a transaction: the row locks are what keeps two workers from claiming the same job
+    @Query(value = "SELECT * FROM indexing_jobs WHERE status = 'PENDING' AND next_attempt_at <= NOW() "
+            + "AND (lease_expires_at IS NULL OR lease_expires_at <= NOW()) "
+            + "ORDER BY priority DESC, next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<IndexingJob> lockAvailable(@Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE indexing_jobs SET attempts = attempts + 1, lease_token = :token, "
+            + "lease_expires_at = NOW() + INTERVAL :leaseSeconds SECOND WHERE id IN :ids", nativeQuery = true)
+    int lease(@Param("ids") Collection<Long> ids, @Param("token") String token,
+              @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM indexing_jobs WHERE id IN :ids AND lease_token = :token", nativeQuery = true)
+    int complete(@Param("ids") Collection<Long> ids, @Param("token") String token);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE indexing_jobs SET next_attempt_at = NOW() + INTERVAL :delaySeconds SECOND, "
+            + "lease_expires_at = NULL, lease_token = NULL, last_error = :error "
+            + "WHERE id = :id AND lease_token = :token", nativeQuery = true)
+    int retryLater(@Param("id") Long id, @Param("token") String token, @Param("delaySeconds") long delaySeconds,
+                   @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE indexing_jobs SET status = 'FAILED', lease_expires_at = NULL, lease_token = NULL, "
+            + "last_error = :error WHERE id = :id AND lease_token = :token", nativeQuery = true)
+    int giveUp(@Param("id") Long id, @Param("token") String token, @Param("error") String error);
+
+    long countByStatus(IndexingJob.Status status);
+}
@@ -1,22 +1,100 @@
 package com.eventphoto.repository;
 
 import com.eventphoto.entity.Photo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PhotoRepository extends JpaRepository<Photo, Integer> {
     @org.springframework.data.jpa.repository.Query("SELECT p FROM Photo p WHERE p.event.id = :eventId")
     List<Photo> findByEventId(@Param("eventId") Integer eventId);
 
+    // Keyset pages of an event's photos in upload order; the fetch joins spare a query per row for event and uploader
+    @org.springframework.data.jpa.repository.Query("SELECT p FROM Photo p JOIN FETCH p.event JOIN FETCH p.uploadedBy "
+            + "WHERE p.event.id = :eventId ORDER BY p.createdAt ASC, p.id ASC")
+    List<Photo> findFirstPageByEventId(@Param("eventId") Integer eventId, Pageable pageable);
+
+    @org.springframework.data.jpa.repository.Query("SELECT p FROM Photo p JOIN FETCH p.event JOIN FETCH p.uploadedBy "
+            + "WHERE p.event.id = :eventId "
+            + "AND (p.createdAt > :createdAt OR (p.createdAt = :createdAt AND p.id > :id)) "
+            + "ORDER BY p.createdAt ASC, p.id ASC")
+    List<Photo> findPageByEventIdAfter(@Param("eventId") Integer eventId,
+                                       @Param("createdAt") java.time.LocalDateTime createdAt,
+                                       @Param("id") Integer id, Pageable pageable);
+
     @org.springframework.data.jpa.repository.Query("SELECT p FROM Photo p WHERE p.event.id = :eventId AND p.indexed = :indexed")
     List<Photo> findByEventIdAndIndexed(@Param("eventId") Integer eventId, @Param("indexed") Boolean indexed);
 
+    // Photos whose last detection run found no faces, so they have nothing in face_embeddings to restore
+    @org.springframework.data.jpa.repository.Query("SELECT p.id FROM Photo p WHERE p.event.id = :eventId AND p.faceCount = 0")
+    java.util.Set<Integer> findIdsWithoutFacesByEventId(@Param("eventId") Integer eventId);
+
+    // Photos that have never been through detection since face_embeddings exists, so nothing of theirs is stored
+    @org.springframework.data.jpa.repository.Query("SELECT p.id FROM Photo p WHERE p.event.id = :eventId AND p.faceCount IS NULL")
+    java.util.Set<Integer> findIdsWithoutStoredFacesByEventId(@Param("eventId") Integer eventId);
+
     @org.springframework.data.jpa.repository.Query("SELECT COUNT(p) FROM Photo p WHERE p.uploadedBy.id = :photographerId")
     long countByPhotographerId(@Param("photographerId") Integer photographerId);
 
     java.util.List<Photo> findByEventIdIn(java.util.List<Integer> eventIds);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("UPDATE Photo p SET p.indexed = true, p.updatedAt = CURRENT_TIMESTAMP WHERE p.id IN :ids")
+    int markIndexed(@Param("ids") java.util.Collection<Integer> ids);
+
+    List<Photo> findByStorageStatus(Photo.StorageStatus storageStatus);
+
+    Optional<Photo> findFirstByEventIdAndContentHashOrderByIdAsc(Integer eventId, String contentHash);
+
+    interface PerceptualHashRow {
+        Integer getId();
+
+        Long getPerceptualHash();
+
+        java.time.LocalDateTime getCapturedAt();
+    }
+
+    // Latest burst representatives of one photographer in an event, newest first
+    @org.springframework.data.jpa.repository.Query("SELECT p.id AS id, p.perceptualHash AS perceptualHash, "
+            + "COALESCE(p.capturedAt, p.createdAt) AS capturedAt FROM Photo p "
+            + "WHERE p.event.id = :eventId AND p.uploadedBy.id = :photographerId "
+            + "AND p.perceptualHash IS NOT NULL AND p.representativePhotoId IS NULL ORDER BY p.id DESC")
+    List<PerceptualHashRow> findRecentRepresentatives(@Param("eventId") Integer eventId,
+                                                      @Param("photographerId") Integer photographerId,
+                                                      Pageable pageable);
+
+    interface BurstMemberRow {
+        Integer getId();
+
+        Integer getRepresentativePhotoId();
+
+        // Null while the representative has not been through detection
+        Integer getRepresentativeFaceCount();
+    }
+
+    @org.springframework.data.jpa.repository.Query("SELECT p.id AS id, p.representativePhotoId AS representativePhotoId, "
+            + "r.faceCount AS representativeFaceCount FROM Photo p, Photo r "
+            + "WHERE r.id = p.representativePhotoId AND p.id IN :ids")
+    List<BurstMemberRow> findBurstMembers(@Param("ids") java.util.Collection<Integer> ids);
+
+    // Zero when the photo was deleted or already stored while its Drive upload ran
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("UPDATE Photo p SET p.driveFileId = :driveFileId, "
+            + "p.smallFileId = :smallFileId, p.mediumFileId = :mediumFileId, p.fullFileId = :fullFileId, "
+            + "p.perceptualHash = :perceptualHash, p.representativePhotoId = :representativePhotoId, "
+            + "p.indexed = :indexed, p.storageStatus = :stored, p.stagedFile = NULL, p.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE p.id = :id AND p.storageStatus = :pending")
+    int completeStorage(@Param("id") Integer id, @Param("driveFileId") String driveFileId,
+                        @Param("smallFileId") String smallFileId, @Param("mediumFileId") String mediumFileId,
+                        @Param("fullFileId") String fullFileId, @Param("perceptualHash") Long perceptualHash,
+                        @Param("representativePhotoId") Integer representativePhotoId,
+                        @Param("indexed") Boolean indexed, @Param("stored") Photo.StorageStatus stored,
+                        @Param("pending") Photo.StorageStatus pending);
 }
@@ -0,0 +1,42 @@
+package com.eventphoto.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of concurrent calls of one kind, so a slow dependency can hold at most that many request threads.
+ * Callers that cannot get a slot within {@code maxWaitMs} are turned away instead of queueing up.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final Semaphore permits;
+    private final long maxWaitMs;
+
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMs) {
+        this.name = name;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean tryEnter() {
+        try {
+            return permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void exit() {
+        permits.release();
+    }
+
+    public int available() {
+        return permits.availablePermits();
+    }
+}
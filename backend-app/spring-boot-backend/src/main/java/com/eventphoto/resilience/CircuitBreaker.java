@@ -0,0 +1,138 @@
+package com.eventphoto.resilience;
+
+/**
+ * Count-based circuit breaker. It opens when at least {@code failureRatePercent} of the last {@code windowSize} calls
+ * failed, then rejects calls for {@code openMs} before letting {@code halfOpenCalls} trial calls through; it closes
+ * again once they all succeed. Callers report calls that were too slow as failures, so a service that only slowed
+ * down trips it as well as one that errors.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureRatePercent;
+    private final int minimumCalls;
+    private final long openMs;
+    private final int halfOpenCalls;
+
+    // Ring of the last outcomes, true for a failed call
+    private final boolean[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, long openMs,
+                          int halfOpenCalls) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.openMs = openMs;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Asks for permission to make a call. Every permitted call must be reported through {@link #record}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return false;
+            }
+            trialsStarted++;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a call would currently be let through, without taking a trial slot.
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.currentTimeMillis() >= openUntil;
+            case HALF_OPEN -> trialsStarted < halfOpenCalls;
+        };
+    }
+
+    /**
+     * Hands back a permission that was not used for a call.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    public synchronized void record(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else if (++trialsSucceeded >= halfOpenCalls) {
+                state = State.CLOSED;
+                reset();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened
+            return;
+        }
+        if (recorded == window.length) {
+            failures -= window[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        window[next] = failed;
+        failures += failed ? 1 : 0;
+        next = (next + 1) % window.length;
+        if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Milliseconds until the breaker lets a trial call through, 0 when it is not open.
+     */
+    public synchronized long remainingOpenMs() {
+        return state == State.OPEN ? Math.max(0, openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openMs;
+        reset();
+    }
+
+    private void reset() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,207 @@
+package com.eventphoto.service;
+
+import com.eventphoto.dto.BulkUploadItem;
+import com.eventphoto.dto.BulkUploadResponse;
+import com.eventphoto.entity.Event;
+import com.eventphoto.entity.User;
+import com.eventphoto.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Uploads many photos of one event in a single request. The event, the photographer and the Drive folder are looked
+ * up once. The request thread parses files off the request while {@code bulk-upload.workers} threads store earlier
+ * ones: Drive upload with copies, row insert and indexing job. Photos wait in {@link UploadSpool} files, at most
+ * {@code bulk-upload.max-in-flight} of them per batch, so parsing waits for storing instead of reading a whole memory
+ * card into the heap or onto the disk.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkUploadService {
+
+    private final PhotoService photoService;
+    private final UserRepository userRepository;
+    private final UploadSpool uploadSpool;
+
+    @Value("${bulk-upload.workers:4}")
+    private int workers;
+
+    @Value("${bulk-upload.max-in-flight:8}")
+    private int maxInFlight;
+
+    // ZIP entries are held to the same limit as single uploads
+    @Value("${spring.servlet.multipart.max-file-size:50MB}")
+    private DataSize maxFileSize;
+
+    private ExecutorService workerPool;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger count = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "bulk-upload-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public BulkUploadResponse uploadFiles(Integer eventId, Integer photographerId, List<MultipartFile> files) {
+        Batch batch = new Batch(eventId, photographerId);
+        for (MultipartFile file : files) {
+            String name = file.getOriginalFilename();
+            try {
+                batch.add(name, uploadSpool.spool(file));
+            } catch (IOException e) {
+                batch.failed(name, "Could not read file: " + e.getMessage());
+            } catch (UploadCapacityException e) {
+                batch.failed(name, e.getMessage());
+            }
+        }
+        return batch.finish();
+    }
+
+    /**
+     * Uploads the images in a ZIP archive read straight from the request body. Directories are ignored and other
+     * entries are reported as skipped. A broken archive ends the batch with the photos read so far.
+     */
+    public BulkUploadResponse uploadZip(Integer eventId, Integer photographerId, InputStream body) {
+        Batch batch = new Batch(eventId, photographerId);
+        try (ZipInputStream zip = new ZipInputStream(body)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+                    continue;
+                }
+                String path = entry.getName();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                MediaType type = MediaTypeFactory.getMediaType(name).orElse(null);
+                if (name.startsWith(".") || type == null || !"image".equals(type.getType())) {
+                    batch.skipped(path, "Not an image");
+                    continue;
+                }
+                UploadSpool.Spooled spool;
+                try {
+                    spool = uploadSpool.spool(zip, maxFileSize.toBytes(), name, type.toString());
+                } catch (UploadCapacityException e) {
+                    batch.failed(path, e.getMessage());
+                    continue;
+                }
+                if (spool == null) {
+                    batch.failed(path, "File larger than " + maxFileSize.toMegabytes() + " MB");
+                    continue;
+                }
+                batch.add(path, spool);
+            }
+        } catch (IOException e) {
+            batch.failed("(archive)", "Could not read ZIP: " + e.getMessage());
+        }
+        return batch.finish();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workerPool.shutdownNow();
+    }
+
+    private class Batch {
+
+        private final Event event;
+        private final User photographer;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final List<CompletableFuture<BulkUploadItem>> items = new ArrayList<>();
+
+        Batch(Integer eventId, Integer photographerId) {
+            photographer = userRepository.findById(photographerId)
+                    .orElseThrow(() -> new RuntimeException("Photographer not found"));
+            event = photoService.prepareUploadEvent(eventId);
+        }
+
+        // Reported under {@code path}, stored under the spooled file's name; takes over the spool reference
+        void add(String path, UploadSpool.Spooled spool) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                spool.release();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Upload interrupted");
+            }
+            CompletableFuture<BulkUploadItem> item = new CompletableFuture<>();
+            items.add(item);
+            try {
+                workerPool.execute(() -> {
+                    try {
+                        PhotoService.StoredPhoto stored = photoService.storePhoto(event, photographer, spool);
+                        item.complete(BulkUploadItem.builder()
+                                .name(path)
+                                .status(stored.duplicate() ? "DUPLICATE" : "CREATED")
+                                .photo(photoService.mapToResponse(stored.photo()))
+                                .build());
+                    } catch (Exception e) {
+                        log.warn("Bulk upload of {} to event {} failed: {}", path, event.getId(), e.toString());
+                        item.complete(item(path, "FAILED", e.getMessage()));
+                    } finally {
+                        // An Error still ends the worker, but never leaves finish() waiting on the item
+                        item.complete(item(path, "FAILED", "Upload aborted"));
+                        spool.release();
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                item.complete(item(path, "FAILED", "Server is shutting down"));
+                spool.release();
+                inFlight.release();
+            }
+        }
+
+        void failed(String name, String error) {
+            items.add(CompletableFuture.completedFuture(item(name, "FAILED", error)));
+        }
+
+        void skipped(String name, String error) {
+            items.add(CompletableFuture.completedFuture(item(name, "SKIPPED", error)));
+        }
+
+        BulkUploadResponse finish() {
+            List<BulkUploadItem> results = items.stream().map(CompletableFuture::join).toList();
+            int created = (int) results.stream().filter(item -> "CREATED".equals(item.getStatus())).count();
+            int failed = (int) results.stream().filter(item -> "FAILED".equals(item.getStatus())).count();
+            int duplicates = (int) results.stream().filter(item -> "DUPLICATE".equals(item.getStatus())).count();
+            log.info("Bulk upload to event {}: {} created, {} duplicates, {} failed", event.getId(), created,
+                    duplicates, failed);
+            return BulkUploadResponse.builder()
+                    .eventId(event.getId())
+                    .created(created)
+                    .duplicates(duplicates)
+                    .failed(failed)
+                    .items(results)
+                    .build();
+        }
+
+        private BulkUploadItem item(String name, String status, String error) {
+            return BulkUploadItem.builder().name(name).status(status).error(error).build();
+        }
+    }
+}
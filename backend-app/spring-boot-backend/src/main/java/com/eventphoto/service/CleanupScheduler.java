@@ -2,6 +2,7 @@ package com.eventphoto.service;
 
 import com.eventphoto.entity.Event;
 import com.eventphoto.repository.EventRepository;
+import com.eventphoto.storage.PhotoStorage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -17,8 +18,9 @@ import java.util.List;
 public class CleanupScheduler {
 
     private final EventRepository eventRepository;
-    private final GoogleDriveService googleDriveService;
+    private final PhotoStorage photoStorage;
     private final FaceRecognitionService faceRecognitionService;
+    private final PhotoFileCache photoFileCache;
 
     @Scheduled(fixedRate = 3600000) // Run every hour
     @Transactional
@@ -37,9 +39,9 @@ public class CleanupScheduler {
         log.info("Deleting data for event: {} (ID: {})", event.getName(), event.getId());
 
         try {
-            // 1. Delete from Google Drive
+            // 1. Delete from photo storage
             if (event.getDriveFolderId() != null) {
-                googleDriveService.deleteFolder(event.getDriveFolderId());
+                photoStorage.deleteContainer(event.getDriveFolderId());
             }
 
             // 2. Delete from Face Recognition Service
@@ -48,6 +50,7 @@ public class CleanupScheduler {
             // 3. Mark in DB or Delete (Requirement: "Delete: Google Drive folder, Photos,
             // Face embeddings, Event records, QR access")
             // Cascading delete should handle Photos and FaceEmbeddings if configured
+            photoFileCache.invalidateEvent(event.getId());
             eventRepository.delete(event);
 
             log.info("Successfully deleted data for event ID: {}", event.getId());
@@ -0,0 +1,217 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.GoogleToken;
+import com.eventphoto.repository.GoogleTokenRepository;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialRefreshListener;
+import com.google.api.client.auth.oauth2.TokenErrorResponse;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.apache.v2.GoogleApacheHttpTransport;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.services.drive.Drive;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Drive client for the whole application: a pooled HTTP transport and a credential whose access token lives in
+ * memory. The token row is read when the client is first built and written back only when the token is refreshed.
+ *
+ * <p>The credential refreshes under its own lock and re-checks expiry there, so concurrent callers share a single
+ * refresh. A background task refreshes ahead of expiry, so requests normally never wait for one.
+ *
+ * <p>Requests that fail with a dropped connection, a 5xx or a 429 are retried with exponential backoff. For resumable
+ * uploads the client first asks Drive how many bytes it committed and resends only the rest of the chunk.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DriveClientHolder {
+
+    private final GoogleTokenRepository tokenRepository;
+
+    @Value("${google.drive.oauth.client-id}")
+    private String clientId;
+
+    @Value("${google.drive.oauth.client-secret}")
+    private String clientSecret;
+
+    // Tokens expiring within this window are refreshed in the background
+    @Value("${google.drive.token-refresh-margin-seconds:300}")
+    private long refreshMarginSeconds;
+
+    @Value("${google.drive.token-check-interval-seconds:60}")
+    private long checkIntervalSeconds;
+
+    // Total time one request may spend retrying before its error is thrown
+    @Value("${google.drive.retry-max-elapsed-seconds:60}")
+    private int retryMaxElapsedSeconds;
+
+    private ApacheHttpTransport transport;
+    private ScheduledExecutorService refresher;
+    private volatile Credential credential;
+    private volatile Drive drive;
+
+    /**
+     * Returns the shared client, building it from the stored token on first use.
+     */
+    public Drive drive() throws IOException {
+        Drive current = drive;
+        return current != null ? current : build();
+    }
+
+    /**
+     * Drops the client after a new login was stored, so the next call picks up the new token.
+     */
+    public synchronized void tokenUpdated() {
+        credential = null;
+        drive = null;
+    }
+
+    private synchronized Drive build() throws IOException {
+        if (drive != null) {
+            return drive;
+        }
+        // Not cached when missing, so connecting Drive later needs no restart
+        GoogleToken token = tokenRepository.findFirstByOrderByIdDesc()
+                .orElseThrow(
+                        () -> new RuntimeException("Google Drive not connected. Please login via /api/oauth/login"));
+
+        if (transport == null) {
+            try {
+                transport = GoogleApacheHttpTransport.newTrustedTransport();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Security error: " + e.getMessage());
+            }
+        }
+
+        Credential built = new GoogleCredential.Builder()
+                .setTransport(transport)
+                .setJsonFactory(GsonFactory.getDefaultInstance())
+                .setClientSecrets(clientId, clientSecret)
+                .addRefreshListener(new TokenPersister())
+                .build()
+                .setAccessToken(token.getAccessToken())
+                .setRefreshToken(token.getRefreshToken())
+                .setExpirationTimeMilliseconds(token.getExpiryTime() == null ? null
+                        : token.getExpiryTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+
+        Drive client = new Drive.Builder(transport, GsonFactory.getDefaultInstance(),
+                withRetries(built, retryMaxElapsedSeconds * 1000))
+                .setApplicationName("EventPhotoSystem")
+                .build();
+        credential = built;
+        drive = client;
+
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "drive-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshIfExpiring, 0, checkIntervalSeconds, TimeUnit.SECONDS);
+        }
+        return client;
+    }
+
+    /**
+     * Adds backoff retries to the credential's request setup. The credential still answers 401s by refreshing the
+     * token; every request gets its own backoff state.
+     */
+    static HttpRequestInitializer withRetries(Credential credential, int maxElapsedMillis) {
+        return request -> {
+            credential.initialize(request);
+            ExponentialBackOff backOff = new ExponentialBackOff.Builder()
+                    .setInitialIntervalMillis(500)
+                    .setMaxIntervalMillis(10_000)
+                    .setMaxElapsedTimeMillis(maxElapsedMillis)
+                    .build();
+            HttpBackOffUnsuccessfulResponseHandler onStatus = new HttpBackOffUnsuccessfulResponseHandler(backOff)
+                    .setBackOffRequired(response -> response.getStatusCode() / 100 == 5
+                            || response.getStatusCode() == 429);
+            request.setUnsuccessfulResponseHandler((req, response, supportsRetry) ->
+                    credential.handleResponse(req, response, supportsRetry)
+                            || onStatus.handleResponse(req, response, supportsRetry));
+            request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(backOff));
+        };
+    }
+
+    private void refreshIfExpiring() {
+        Credential current = credential;
+        if (current == null) {
+            return;
+        }
+        Long expiresIn = current.getExpiresInSeconds();
+        if (expiresIn != null && expiresIn > refreshMarginSeconds) {
+            return;
+        }
+        try {
+            if (!current.refreshToken()) {
+                log.warn("Google Drive token could not be refreshed; requests will retry");
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Google Drive token refresh failed: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (transport != null) {
+            try {
+                transport.shutdown();
+            } catch (IOException e) {
+                log.debug("Closing Drive transport: {}", e.toString());
+            }
+        }
+    }
+
+    // Writes each refreshed token to the database so it survives a restart
+    private class TokenPersister implements CredentialRefreshListener {
+
+        @Override
+        public void onTokenResponse(Credential refreshed, TokenResponse response) {
+            try {
+                tokenRepository.findFirstByOrderByIdDesc().ifPresent(token -> {
+                    token.setAccessToken(refreshed.getAccessToken());
+                    if (response.getRefreshToken() != null) {
+                        token.setRefreshToken(response.getRefreshToken());
+                    }
+                    Long expiresAt = refreshed.getExpirationTimeMilliseconds();
+                    if (expiresAt != null) {
+                        token.setExpiryTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt),
+                                ZoneId.systemDefault()));
+                    }
+                    tokenRepository.save(token);
+                });
+            } catch (RuntimeException e) {
+                // The in-memory token stays valid; only a restart would need the stored one
+                log.warn("Could not store refreshed Google Drive token: {}", e.toString());
+            }
+        }
+
+        @Override
+        public void onTokenErrorResponse(Credential failed, TokenErrorResponse response) {
+            log.warn("Google Drive token refresh rejected: {}", response == null ? "no response" : response.getError());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.eventphoto.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of threads for Drive uploads, so an original and its copies, or several photos, are sent at once
+ * over the shared connection pool. When all workers are busy and the queue is full the submitting thread runs the
+ * upload itself, which slows producers down instead of queueing without limit.
+ *
+ * <p>Tasks must not wait for other tasks of this pool.
+ */
+@Component
+@Slf4j
+public class DriveUploadPool {
+
+    @Value("${google.drive.upload.workers:4}")
+    private int workers;
+
+    @Value("${google.drive.upload.queue-capacity:32}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor pool;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "drive-upload-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> upload) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                result.complete(upload.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for an upload and rethrows its failure as it was thrown.
+     */
+    public static <T> T await(CompletableFuture<T> upload) throws IOException {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        pool.shutdown();
+        if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Drive uploads still running at shutdown");
+            pool.shutdownNow();
+        }
+    }
+}
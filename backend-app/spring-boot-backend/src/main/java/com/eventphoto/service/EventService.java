@@ -6,6 +6,7 @@ import com.eventphoto.entity.Event;
 import com.eventphoto.entity.User;
 import com.eventphoto.repository.EventRepository;
 import com.eventphoto.repository.UserRepository;
+import com.eventphoto.storage.PhotoStorage;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
@@ -27,7 +28,8 @@ public class EventService {
 
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
-    private final GoogleDriveService googleDriveService;
+    private final PhotoStorage photoStorage;
+    private final PhotoFileCache photoFileCache;
 
     @Value("${server.servlet.context-path:}")
     private String contextPath;
@@ -48,9 +50,9 @@ public class EventService {
 
         Event savedEvent = eventRepository.save(event);
 
-        // Create Google Drive folder
+        // Create Google Drive folder (or the storage's container)
         try {
-            String driveFolderId = googleDriveService.createEventFolder(savedEvent.getName(), savedEvent.getId());
+            String driveFolderId = photoStorage.createContainer(savedEvent.getName(), savedEvent.getId());
             savedEvent.setDriveFolderId(driveFolderId);
         } catch (IOException e) {
             throw new RuntimeException("Failed to create Google Drive folder: " + e.getMessage());
@@ -113,6 +115,13 @@ public class EventService {
         return events.stream().map(this::mapToResponse).collect(Collectors.toList());
     }
 
+    /**
+     * Whether the event exists and guests may still search it.
+     */
+    public boolean isActive(Integer eventId) {
+        return eventRepository.findById(eventId).map(event -> "ACTIVE".equals(event.getStatus())).orElse(false);
+    }
+
     private String generateQRCode(Integer eventId) {
         try {
             String qrContent = String.format("https://frontend.decointerior.in/?eventId=%d", eventId);
@@ -143,7 +152,7 @@ public class EventService {
         // 2. Delete from Google Drive (Photos)
         if (event.getDriveFolderId() != null) {
             try {
-                googleDriveService.deleteFile(event.getDriveFolderId());
+                photoStorage.deleteContainer(event.getDriveFolderId());
             } catch (IOException e) {
                 System.err.println("Failed to delete Google Drive folder: " + e.getMessage());
                 // Continue deletion even if Drive fails
@@ -151,6 +160,7 @@ public class EventService {
         }
 
         // 3. Delete from Database
+        photoFileCache.invalidateEvent(eventId);
         eventRepository.delete(event);
     }
 
@@ -1,140 +1,379 @@
 package com.eventphoto.service;
 
-import com.eventphoto.dto.FaceMatchResponse;
-import com.eventphoto.entity.Photo;
+import com.eventphoto.dto.FaceIndexBatchResponse;
+import com.eventphoto.entity.FaceEmbedding;
+import com.eventphoto.face.EventFaceIndex;
+import com.eventphoto.face.FaceDistance;
+import com.eventphoto.face.FaceIndexRegistry;
+import com.eventphoto.face.FaceMatch;
+import com.eventphoto.face.ImagePreprocessor;
+import com.eventphoto.face.MatchResultCache;
+import com.eventphoto.repository.FaceEmbeddingBulkRepository;
+import com.eventphoto.repository.FaceEmbeddingRepository;
 import com.eventphoto.repository.PhotoRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class FaceRecognitionService {
 
-    private final RestTemplate restTemplate;
+    private final FaceServiceClient faceServiceClient;
     private final PhotoRepository photoRepository;
+    private final FaceEmbeddingRepository faceEmbeddingRepository;
+    private final FaceIndexRegistry faceIndexRegistry;
+    private final ImagePreprocessor imagePreprocessor;
+    private final MatchResultCache matchResultCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService crossEventMatcher = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "cross-event-match");
+                t.setDaemon(true);
+                return t;
+            });
 
-    @Value("${face-recognition.service-url}")
-    private String faceServiceUrl;
+    @Value("${face-recognition.match-tolerance:0.5}")
+    private float matchTolerance;
 
-    @Value("${face-recognition.index-face-endpoint}")
-    private String indexFaceEndpoint;
+    // Long edge photos and selfies are downscaled to before detection
+    @Value("${face-preprocess.index-long-edge:1600}")
+    private int indexLongEdge;
 
-    @Value("${face-recognition.match-face-endpoint}")
-    private String matchFaceEndpoint;
+    @Value("${face-preprocess.match-long-edge:800}")
+    private int matchLongEdge;
 
-    @Async
-    public void indexFaceAsync(Integer eventId, Integer photoId, byte[] imageBytes) {
-        try {
-            indexFace(eventId, photoId, imageBytes);
-        } catch (Exception e) {
-            System.err.println("Failed to index face for photo " + photoId + ": " + e.getMessage());
-        }
-    }
+    // Downscaled images without a face are sent again at this size; 0 disables the retry
+    @Value("${face-preprocess.retry-long-edge:3200}")
+    private int retryLongEdge;
 
-    public void indexFace(Integer eventId, Integer photoId, byte[] imageBytes) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("event_id", eventId);
-            body.add("photo_id", photoId);
-            body.add("image", new org.springframework.core.io.ByteArrayResource(imageBytes) {
-                @Override
-                public String getFilename() {
-                    return "photo_" + photoId + ".jpg";
+    // Selfies sent at full size without a face are sent again for the face service to upsample; 0 disables it
+    @Value("${face-preprocess.retry-upsample:2}")
+    private int retryUpsample;
+
+    /**
+     * Indexes several photos of one event with a single request to the face service and marks them indexed with a
+     * single UPDATE. Photos the service failed on are left unindexed. The images are read from disk while they are
+     * prepared and sent, never whole into memory; the caller keeps the files until this returns.
+     *
+     * @return ids of the photos that were indexed
+     */
+    public List<Integer> indexFaces(Integer eventId, Map<Integer, Path> imagesByPhotoId) {
+        Map<Integer, Double> scales = new HashMap<>();
+        Map<Integer, FaceIndexBatchResponse.Result> results = detect(eventId, imagesByPhotoId, indexLongEdge, scales);
+
+        // Small faces can vanish in the downscaled photo; give faceless ones a second, larger try
+        if (retryLongEdge > indexLongEdge) {
+            Map<Integer, Path> retry = new LinkedHashMap<>();
+            results.forEach((photoId, result) -> {
+                if (result.getError() == null && (result.getEncodings() == null || result.getEncodings().isEmpty())
+                        && scales.getOrDefault(photoId, 1.0) > 1) {
+                    retry.put(photoId, imagesByPhotoId.get(photoId));
                 }
             });
+            if (!retry.isEmpty()) {
+                detect(eventId, retry, retryLongEdge, scales).forEach((photoId, result) -> {
+                    if (result.getError() == null) {
+                        results.put(photoId, result);
+                    }
+                });
+            }
+        }
 
-            org.springframework.http.HttpEntity<org.springframework.util.MultiValueMap<String, Object>> requestEntity = new org.springframework.http.HttpEntity<>(
-                    body, headers);
-
-            org.springframework.http.ResponseEntity<String> response = restTemplate.postForEntity(
-                    faceServiceUrl + "/index-face",
-                    requestEntity,
-                    String.class);
+        dropRepresentativeFaces(results);
 
-            System.out.println("Python service response: " + response.getStatusCode());
+        Map<Integer, List<float[]>> indexed = new LinkedHashMap<>();
+        List<FaceEmbeddingBulkRepository.PhotoFaces> faces = new ArrayList<>();
+        for (FaceIndexBatchResponse.Result result : results.values()) {
+            if (result.getError() != null) {
+                log.warn("Face service failed to index photo {} of event {}: {}", result.getPhotoId(), eventId,
+                        result.getError());
+                continue;
+            }
+            List<float[]> encodings = result.getEncodings() != null ? result.getEncodings() : List.of();
+            faces.add(new FaceEmbeddingBulkRepository.PhotoFaces(result.getPhotoId(), encodings,
+                    originalLocations(result.getLocations(), scales.get(result.getPhotoId()))));
+            indexed.put(result.getPhotoId(), encodings);
+        }
+        // The database copy goes first: it is what the index is rebuilt from if the segment is lost
+        faceEmbeddingRepository.replacePhotoFaces(eventId, faces);
+        indexed.forEach((photoId, encodings) -> {
+            faceIndexRegistry.putPhoto(eventId, photoId, encodings);
+            matchResultCache.photoIndexed(eventId, photoId, encodings);
+        });
+        if (!indexed.isEmpty()) {
+            photoRepository.markIndexed(indexed.keySet());
+            eventPublisher.publishEvent(new FacesIndexedEvent(eventId, indexed));
+        }
+        return new ArrayList<>(indexed.keySet());
+    }
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                Photo photo = photoRepository.findById(photoId)
-                        .orElseThrow(() -> new RuntimeException("Photo not found"));
-                photo.setIndexed(true);
-                photoRepository.save(photo);
-                System.out.println("Photo " + photoId + " marked as indexed in DB.");
+    // A later burst frame keeps only the faces its first frame lacks, so guests get the first frame once and later
+    // frames only for people who join in them. Until the first frame is indexed the member keeps every face.
+    private void dropRepresentativeFaces(Map<Integer, FaceIndexBatchResponse.Result> results) {
+        List<PhotoRepository.BurstMemberRow> members = photoRepository.findBurstMembers(results.keySet());
+        float maxSquared = matchTolerance * matchTolerance;
+        for (PhotoRepository.BurstMemberRow member : members) {
+            FaceIndexBatchResponse.Result result = results.get(member.getId());
+            if (result.getError() != null || result.getEncodings() == null || result.getEncodings().isEmpty()) {
+                continue;
             }
-        } catch (org.springframework.web.client.HttpClientErrorException e) {
-            if (e.getStatusCode() == org.springframework.http.HttpStatus.BAD_REQUEST
-                    && e.getResponseBodyAsString().contains("No faces found")) {
-                System.out.println("No faces found in photo " + photoId + ". Marking as indexed to avoid retry.");
-                Photo photo = photoRepository.findById(photoId)
-                        .orElseThrow(() -> new RuntimeException("Photo not found"));
-                photo.setIndexed(true);
-                photoRepository.save(photo);
-            } else {
-                System.err
-                        .println("HTTP Error indexing face for photo " + photoId + ": " + e.getResponseBodyAsString());
-                throw new RuntimeException("HTTP Error indexing face: " + e.getMessage());
+            List<float[]> representative = representativeEncodings(member, results);
+            if (representative.isEmpty()) {
+                continue;
             }
-        } catch (Exception e) {
-            System.err.println("Unexpected error indexing face for photo " + photoId + ": " + e.getMessage());
-            throw new RuntimeException("Failed to index face: " + e.getMessage());
+            List<float[]> encodings = new ArrayList<>();
+            List<int[]> locations = result.getLocations() != null ? new ArrayList<>() : null;
+            for (int i = 0; i < result.getEncodings().size(); i++) {
+                float[] encoding = result.getEncodings().get(i);
+                boolean seen = false;
+                for (float[] face : representative) {
+                    if (FaceDistance.squared(encoding, 0, face, 0, encoding.length) <= maxSquared) {
+                        seen = true;
+                        break;
+                    }
+                }
+                if (!seen) {
+                    encodings.add(encoding);
+                    if (locations != null && i < result.getLocations().size()) {
+                        locations.add(result.getLocations().get(i));
+                    }
+                }
+            }
+            result.setEncodings(encodings);
+            result.setLocations(locations);
+            result.setFacesDetected(encodings.size());
+        }
+    }
+
+    private List<float[]> representativeEncodings(PhotoRepository.BurstMemberRow member,
+                                                  Map<Integer, FaceIndexBatchResponse.Result> results) {
+        FaceIndexBatchResponse.Result sameBatch = results.get(member.getRepresentativePhotoId());
+        if (sameBatch != null) {
+            return sameBatch.getError() == null && sameBatch.getEncodings() != null
+                    ? sameBatch.getEncodings()
+                    : List.of();
+        }
+        if (member.getRepresentativeFaceCount() == null || member.getRepresentativeFaceCount() == 0) {
+            return List.of();
+        }
+        List<float[]> encodings = new ArrayList<>();
+        for (FaceEmbedding face : faceEmbeddingRepository.findByPhotoId(member.getRepresentativePhotoId())) {
+            FloatBuffer vector = ByteBuffer.wrap(face.getEmbedding()).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            float[] encoding = new float[vector.remaining()];
+            vector.get(encoding);
+            encodings.add(encoding);
+        }
+        return encodings;
+    }
+
+    // Sends the photos downscaled to longEdge and records the scale of each one; unchanged files go from disk
+    private Map<Integer, FaceIndexBatchResponse.Result> detect(Integer eventId, Map<Integer, Path> imagesByPhotoId,
+                                                               int longEdge, Map<Integer, Double> scales) {
+        Map<Integer, ImagePreprocessor.Prepared> prepared = new LinkedHashMap<>();
+        imagesByPhotoId.forEach((photoId, image) -> {
+            ImagePreprocessor.Prepared photo = imagePreprocessor.prepare(image, longEdge);
+            prepared.put(photoId, photo);
+            scales.put(photoId, photo.scale());
+        });
+        FaceIndexBatchResponse response = faceServiceClient.indexFaces(eventId, prepared);
+        if (response == null || response.getResults() == null) {
+            throw new RuntimeException("Face service returned no results for event " + eventId);
+        }
+        Map<Integer, FaceIndexBatchResponse.Result> results = new LinkedHashMap<>();
+        response.getResults().forEach(result -> results.put(result.getPhotoId(), result));
+        return results;
+    }
+
+    // Face boxes in the coordinates of the upright full-size photo
+    private static List<int[]> originalLocations(List<int[]> locations, Double scale) {
+        if (locations == null || scale == null || scale == 1) {
+            return locations;
+        }
+        List<int[]> scaled = new ArrayList<>(locations.size());
+        for (int[] box : locations) {
+            int[] original = new int[box.length];
+            for (int i = 0; i < box.length; i++) {
+                original[i] = (int) Math.round(box[i] * scale);
+            }
+            scaled.add(original);
         }
+        return scaled;
     }
 
     public List<Integer> matchFace(Integer eventId, byte[] guestFaceImage) {
-        try {
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("event_id", eventId);
-            body.add("image", new ByteArrayResource(guestFaceImage) {
-                @Override
-                public String getFilename() {
-                    return "guest_face.jpg";
-                }
-            });
+        return photoIds(matchFaceRanked(eventId, MatchResultCache.hash(guestFaceImage), guestFaceImage));
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+    /**
+     * Best face per matched photo, nearest first.
+     *
+     * @param matchId {@link MatchResultCache#hash} of the selfie; the result stays retrievable under it through
+     *                {@link #getCachedMatches} while it is cached
+     */
+    public List<FaceMatch> matchFaceRanked(Integer eventId, String matchId, byte[] guestFaceImage) {
+        return rankedMatches(List.of(eventId), matchId, guestFaceImage).get(eventId);
+    }
 
-            HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(body, headers);
-            ResponseEntity<FaceMatchResponse> response = restTemplate.postForEntity(
-                    faceServiceUrl + matchFaceEndpoint,
-                    request,
-                    FaceMatchResponse.class);
+    /**
+     * Returns a previous {@link #matchFaceRanked} result, or null once it has expired from the cache.
+     */
+    public List<FaceMatch> getCachedMatches(Integer eventId, String matchId) {
+        return matchResultCache.get(eventId, matchId);
+    }
+
+    /**
+     * Matches one selfie against several events. The selfie is embedded at most once, and events whose face summary
+     * rules out a match are skipped without a scan.
+     *
+     * @return matched photo ids per event, in the order of {@code eventIds}
+     */
+    public Map<Integer, List<Integer>> matchFaceAcrossEvents(List<Integer> eventIds, byte[] guestFaceImage) {
+        Map<Integer, List<Integer>> photoIds = new LinkedHashMap<>();
+        rankedMatches(eventIds, MatchResultCache.hash(guestFaceImage), guestFaceImage)
+                .forEach((eventId, matches) -> photoIds.put(eventId, photoIds(matches)));
+        return photoIds;
+    }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return response.getBody().getMatchedPhotoIds();
+    private Map<Integer, List<FaceMatch>> rankedMatches(List<Integer> eventIds, String selfieHash,
+                                                        byte[] guestFaceImage) {
+        // Guests retry with the same selfie a lot; those never reach the face service
+        Map<Integer, List<FaceMatch>> matches = new LinkedHashMap<>();
+        Map<Integer, Long> misses = new LinkedHashMap<>();
+        for (Integer eventId : eventIds) {
+            List<FaceMatch> cached = matchResultCache.get(eventId, selfieHash);
+            matches.put(eventId, cached);
+            if (cached == null) {
+                misses.put(eventId, matchResultCache.version(eventId));
             }
+        }
 
-            return List.of();
-        } catch (org.springframework.web.client.HttpClientErrorException e) {
-            if (e.getStatusCode() == org.springframework.http.HttpStatus.BAD_REQUEST) {
-                // 400 Bad Request usually means "No faces detected"
-                return List.of();
+        if (!misses.isEmpty()) {
+            float[] guestEncoding;
+            try {
+                guestEncoding = embedFace(guestFaceImage);
+            } catch (FaceServiceUnavailableException e) {
+                if (misses.size() == eventIds.size()) {
+                    throw e;
+                }
+                // Serve the events that were cached rather than failing the whole search
+                log.warn("Face service unavailable, returning cached matches for {} of {} events",
+                        eventIds.size() - misses.size(), eventIds.size());
+                misses.keySet().forEach(matches::remove);
+                return matches;
+            }
+            if (misses.size() == 1) {
+                Integer eventId = misses.keySet().iterator().next();
+                matches.put(eventId, matchEvent(eventId, selfieHash, guestEncoding, misses.get(eventId)));
+            } else {
+                Map<Integer, CompletableFuture<List<FaceMatch>>> pending = new LinkedHashMap<>();
+                misses.forEach((eventId, version) -> pending.put(eventId, CompletableFuture.supplyAsync(
+                        () -> matchEvent(eventId, selfieHash, guestEncoding, version), crossEventMatcher)));
+                pending.forEach((eventId, future) -> matches.put(eventId, future.join()));
             }
-            throw new RuntimeException("Failed to match face: " + e.getMessage());
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to match face: " + e.getMessage());
         }
+        return matches;
+    }
+
+    private static List<Integer> photoIds(List<FaceMatch> matches) {
+        return matches.stream().map(FaceMatch::photoId).collect(Collectors.toList());
+    }
+
+    private List<FaceMatch> matchEvent(Integer eventId, String selfieHash, float[] guestEncoding, long version) {
+        List<FaceMatch> matches;
+        if (guestEncoding == null) {
+            matches = List.of();
+        } else {
+            matches = matchResultCache.getNear(eventId, selfieHash, guestEncoding);
+            if (matches == null) {
+                EventFaceIndex index = getEventIndex(eventId);
+                matches = index.mayMatch(guestEncoding, matchTolerance)
+                        ? index.match(guestEncoding, matchTolerance)
+                        : List.of();
+            }
+        }
+        matchResultCache.put(eventId, selfieHash, guestEncoding, matchTolerance, matches, version);
+        return matches;
+    }
+
+    /**
+     * Asks the face service for the encoding of the first face in the image, or null when it finds none.
+     *
+     * @throws FaceServiceUnavailableException when the face service is down, overloaded or too slow
+     */
+    public float[] embedFace(byte[] image) {
+        ImagePreprocessor.Prepared selfie = imagePreprocessor.prepare(image, matchLongEdge);
+        float[] encoding = faceServiceClient.embedFace(selfie.image(), 0);
+        if (encoding == null && selfie.downscaled() && retryLongEdge > matchLongEdge) {
+            // A face too small for the downscaled selfie; try again with more pixels
+            selfie = imagePreprocessor.prepare(image, retryLongEdge);
+            encoding = faceServiceClient.embedFace(selfie.image(), 0);
+        }
+        if (encoding == null && !selfie.downscaled() && retryUpsample > 0) {
+            // No more pixels to send: have the face service upsample the selfie to find a small face
+            encoding = faceServiceClient.embedFace(selfie.image(), retryUpsample);
+        }
+        return encoding;
+    }
+
+    public boolean isFaceServiceAvailable() {
+        return faceServiceClient.isAvailable();
+    }
+
+    /**
+     * Rebuilds the event's index from the stored embeddings instead of re-running detection.
+     *
+     * @return ids of the photos whose faces are stored, including photos known to have none; every other photo
+     * needs a fresh detection run
+     */
+    public Set<Integer> rebuildIndexFromDatabase(Integer eventId) {
+        Set<Integer> stored = faceEmbeddingRepository.findPhotoIdsByEventId(eventId);
+        if (!stored.isEmpty()) {
+            faceIndexRegistry.rebuildFromDatabase(eventId);
+            matchResultCache.invalidate(eventId);
+        }
+        Set<Integer> restored = new HashSet<>(stored);
+        restored.addAll(photoRepository.findIdsWithoutFacesByEventId(eventId));
+        return restored;
+    }
+
+    public EventFaceIndex getEventIndex(Integer eventId) {
+        return faceIndexRegistry.getOrLoad(eventId);
     }
 
     public void deleteEventFaces(Integer eventId) {
         try {
-            restTemplate.delete(faceServiceUrl + "/delete-event-faces/" + eventId);
+            faceEmbeddingRepository.deleteByEventId(eventId);
+            faceIndexRegistry.delete(eventId);
+            matchResultCache.invalidate(eventId);
+            faceServiceClient.deleteEventFaces(eventId);
         } catch (Exception e) {
             System.err.println("Failed to delete event faces for event " + eventId + ": " + e.getMessage());
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        crossEventMatcher.shutdownNow();
+    }
 }
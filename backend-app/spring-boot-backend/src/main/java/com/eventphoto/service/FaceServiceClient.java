@@ -0,0 +1,414 @@
+package com.eventphoto.service;
+
+import com.eventphoto.dto.FaceEmbedResponse;
+import com.eventphoto.dto.FaceIndexBatchResponse;
+import com.eventphoto.face.ImagePreprocessor;
+import com.eventphoto.resilience.Bulkhead;
+import com.eventphoto.resilience.CircuitBreaker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * All HTTP calls to the Python face service, over one pooled client with per-operation timeouts, one circuit breaker
+ * per replica and separate bulkheads for guest matching and indexing. A brownout of the face service therefore holds
+ * at most a bulkhead's worth of request threads for at most one timeout, then fails fast with
+ * {@link FaceServiceUnavailableException} until the breaker lets trial calls through again.
+ *
+ * <p>Guest embeddings are hedged: when the first replica has not answered within {@code hedge-delay-ms}, the same
+ * request goes to the next replica and the first answer wins. The calls still in flight are then cancelled, exchange
+ * and all, so the match bulkhead keeps bounding the calls the face service sees. Indexing fails over to the next
+ * replica only on error.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FaceServiceClient {
+
+    private record Replica(String url, CircuitBreaker breaker, Semaphore connections) {
+    }
+
+    // Outcome of one call: encoding is null when no face was found; error is set when the call failed
+    private record Attempt(float[] encoding, Exception error) {
+    }
+
+    // One hedged call; whoever sets started first, the call or its cancellation, owns the breaker permission
+    private record HedgedCall(Replica replica, AtomicBoolean started, Future<Attempt> future) {
+    }
+
+    private final ObjectMapper objectMapper;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private HttpClient httpClient;
+    private Bulkhead matchBulkhead;
+    private Bulkhead indexBulkhead;
+    private ThreadPoolExecutor hedgePool;
+
+    @Value("${face-recognition.service-url}")
+    private String faceServiceUrl;
+
+    // Optional second instance of the face service for hedging and failover
+    @Value("${face-recognition.replica-url:}")
+    private String replicaUrl;
+
+    @Value("${face-recognition.index-faces-endpoint}")
+    private String indexFacesEndpoint;
+
+    @Value("${face-recognition.embed-face-endpoint}")
+    private String embedFaceEndpoint;
+
+    // HTTP_1_1 or HTTP_2 (negotiated over TLS, falls back to HTTP/1.1)
+    @Value("${face-recognition.http.version:HTTP_1_1}")
+    private String httpVersion;
+
+    @Value("${face-recognition.http.max-connections-per-route:32}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${face-recognition.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${face-recognition.match-timeout-ms:5000}")
+    private int matchTimeoutMs;
+
+    @Value("${face-recognition.index-timeout-ms:120000}")
+    private int indexTimeoutMs;
+
+    @Value("${face-recognition.hedge-delay-ms:800}")
+    private long hedgeDelayMs;
+
+    // Calls slower than these count as failures for the circuit breaker
+    @Value("${face-recognition.match-slow-call-ms:2000}")
+    private long matchSlowCallMs;
+
+    @Value("${face-recognition.index-slow-call-ms:60000}")
+    private long indexSlowCallMs;
+
+    @Value("${face-recognition.bulkhead.match-concurrency:16}")
+    private int matchConcurrency;
+
+    @Value("${face-recognition.bulkhead.match-max-wait-ms:50}")
+    private long matchMaxWaitMs;
+
+    @Value("${face-recognition.bulkhead.index-concurrency:4}")
+    private int indexConcurrency;
+
+    @Value("${face-recognition.bulkhead.index-max-wait-ms:1000}")
+    private long indexMaxWaitMs;
+
+    @Value("${face-recognition.circuit-breaker.window-size:20}")
+    private int breakerWindowSize;
+
+    @Value("${face-recognition.circuit-breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    @Value("${face-recognition.circuit-breaker.failure-rate-percent:50}")
+    private int breakerFailureRatePercent;
+
+    @Value("${face-recognition.circuit-breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Value("${face-recognition.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    @PostConstruct
+    void start() {
+        for (String url : List.of(faceServiceUrl, replicaUrl)) {
+            if (!url.isBlank()) {
+                replicas.add(new Replica(url, new CircuitBreaker(url, breakerWindowSize, breakerMinimumCalls,
+                        breakerFailureRatePercent, breakerOpenMs, breakerHalfOpenCalls),
+                        new Semaphore(maxConnectionsPerRoute)));
+            }
+        }
+        // One shared client: connections to each instance are kept alive and reused (or multiplexed over HTTP/2)
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(httpVersion))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        matchBulkhead = new Bulkhead("face-match", matchConcurrency, matchMaxWaitMs);
+        indexBulkhead = new Bulkhead("face-index", indexConcurrency, indexMaxWaitMs);
+        // No queue: a hedge that cannot get a thread right away is simply not sent
+        hedgePool = new ThreadPoolExecutor(0, matchConcurrency * replicas.size(), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "face-service-call");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Whether any replica's circuit would let a call through right now.
+     */
+    public boolean isAvailable() {
+        return replicas.stream().anyMatch(replica -> replica.breaker().isCallPermitted());
+    }
+
+    /**
+     * Encoding of the first face in the image, or null when the face service finds none. With {@code upsample} above
+     * 0 the face service upsamples the image that many times when it finds no face at first, to find small ones.
+     */
+    public float[] embedFace(byte[] image, int upsample) {
+        if (!matchBulkhead.tryEnter()) {
+            throw unavailable("Too many guest matches in flight");
+        }
+        try {
+            return hedgedEmbed(image, upsample);
+        } finally {
+            matchBulkhead.exit();
+        }
+    }
+
+    private float[] hedgedEmbed(byte[] image, int upsample) {
+        Iterator<Replica> candidates = replicas.iterator();
+        ExecutorCompletionService<Attempt> calls = new ExecutorCompletionService<>(hedgePool);
+        List<HedgedCall> started = new ArrayList<>();
+        int inFlight = startEmbed(candidates, calls, started, image, upsample) ? 1 : 0;
+        long deadline = System.currentTimeMillis() + hedgeDelayMs + matchTimeoutMs;
+        Exception lastError = null;
+        try {
+            while (inFlight > 0) {
+                long wait = candidates.hasNext() ? hedgeDelayMs : deadline - System.currentTimeMillis();
+                Future<Attempt> done = wait > 0 ? calls.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (done == null) {
+                    // Slow answer: race it against the next replica
+                    if (candidates.hasNext()) {
+                        inFlight += startEmbed(candidates, calls, started, image, upsample) ? 1 : 0;
+                        continue;
+                    }
+                    break;
+                }
+                inFlight--;
+                Attempt attempt = done.get();
+                if (attempt.error() == null) {
+                    return attempt.encoding();
+                }
+                lastError = attempt.error();
+                inFlight += startEmbed(candidates, calls, started, image, upsample) ? 1 : 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            lastError = e;
+        } finally {
+            cancel(started);
+        }
+        throw unavailable("Face service did not embed the selfie"
+                + (lastError != null ? ": " + lastError.getMessage() : ""));
+    }
+
+    // Starts the call on the next replica whose circuit lets it through
+    private boolean startEmbed(Iterator<Replica> candidates, ExecutorCompletionService<Attempt> calls,
+                               List<HedgedCall> started, byte[] image, int upsample) {
+        while (candidates.hasNext()) {
+            Replica replica = candidates.next();
+            if (!replica.breaker().tryAcquire()) {
+                continue;
+            }
+            AtomicBoolean claimed = new AtomicBoolean();
+            try {
+                Future<Attempt> future = calls.submit(() -> claimed.compareAndSet(false, true)
+                        ? embedOn(replica, image, upsample)
+                        : new Attempt(null, null));
+                started.add(new HedgedCall(replica, claimed, future));
+                return true;
+            } catch (RejectedExecutionException e) {
+                replica.breaker().release();
+            }
+        }
+        return false;
+    }
+
+    // Interrupts the calls that have not finished, which aborts their exchanges; calls that never ran hand back
+    // their breaker permission here, the others do so themselves
+    private static void cancel(List<HedgedCall> started) {
+        for (HedgedCall call : started) {
+            if (!call.future().isDone()) {
+                call.future().cancel(true);
+            }
+            if (call.started().compareAndSet(false, true)) {
+                call.replica().breaker().release();
+            }
+        }
+    }
+
+    private Attempt embedOn(Replica replica, byte[] image, int upsample) {
+        long start = System.currentTimeMillis();
+        try {
+            MultipartBody body = new MultipartBody().file("image", "guest_face.jpg", image);
+            if (upsample > 0) {
+                body.field("upsample", upsample);
+            }
+            HttpResponse<byte[]> response = post(replica, embedFaceEndpoint, body, matchTimeoutMs);
+            if (response.statusCode() >= 500) {
+                replica.breaker().record(true);
+                return new Attempt(null, new IOException("Face service answered " + response.statusCode()));
+            }
+            // Anything below 500 means the replica is healthy, whatever it thought of the request
+            replica.breaker().record(System.currentTimeMillis() - start > matchSlowCallMs);
+            if (response.statusCode() == 400) {
+                // 400 Bad Request usually means "No faces detected"
+                return new Attempt(null, null);
+            }
+            if (response.statusCode() >= 300) {
+                return new Attempt(null, new IOException("Face service answered " + response.statusCode()));
+            }
+            return new Attempt(objectMapper.readValue(response.body(), FaceEmbedResponse.class).getEncoding(), null);
+        } catch (InterruptedException e) {
+            replica.breaker().release();
+            Thread.currentThread().interrupt();
+            return new Attempt(null, e);
+        } catch (Exception e) {
+            replica.breaker().record(true);
+            return new Attempt(null, e);
+        }
+    }
+
+    /**
+     * Detects and encodes the faces of several photos of one event in one request. Images prepared from a file are
+     * streamed from disk as the request is sent.
+     */
+    public FaceIndexBatchResponse indexFaces(Integer eventId,
+                                             Map<Integer, ImagePreprocessor.Prepared> imagesByPhotoId) {
+        if (!indexBulkhead.tryEnter()) {
+            throw unavailable("Too many index batches in flight");
+        }
+        try {
+            MultipartBody body = new MultipartBody().field("event_id", eventId);
+            imagesByPhotoId.forEach((photoId, image) -> {
+                body.field("photo_ids", photoId);
+                if (image.file() != null) {
+                    body.file("images", "photo_" + photoId + ".jpg", image.file());
+                } else {
+                    body.file("images", "photo_" + photoId + ".jpg", image.image());
+                }
+            });
+
+            Exception lastError = null;
+            for (Replica replica : replicas) {
+                if (!replica.breaker().tryAcquire()) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                HttpResponse<byte[]> response;
+                try {
+                    response = post(replica, indexFacesEndpoint, body, indexTimeoutMs);
+                } catch (InterruptedException e) {
+                    replica.breaker().release();
+                    Thread.currentThread().interrupt();
+                    throw unavailable("Interrupted while indexing a batch of event " + eventId);
+                } catch (Exception e) {
+                    replica.breaker().record(true);
+                    log.warn("Face service {} failed to index a batch of event {}: {}", replica.url(), eventId,
+                            e.getMessage());
+                    lastError = e;
+                    continue;
+                }
+                if (response.statusCode() < 500) {
+                    replica.breaker().record(System.currentTimeMillis() - start > indexSlowCallMs);
+                    if (response.statusCode() >= 300) {
+                        throw new RuntimeException("Face service rejected batch of event " + eventId + ": "
+                                + response.statusCode());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), FaceIndexBatchResponse.class);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Unreadable index response for event " + eventId, e);
+                    }
+                } else {
+                    replica.breaker().record(true);
+                    lastError = new IOException("Face service answered " + response.statusCode());
+                    log.warn("Face service {} failed to index a batch of event {}: {}", replica.url(), eventId,
+                            response.statusCode());
+                }
+            }
+            throw unavailable("Face service did not index the batch"
+                    + (lastError != null ? ": " + lastError.getMessage() : ""));
+        } finally {
+            indexBulkhead.exit();
+        }
+    }
+
+    /**
+     * Removes any encodings the face service itself still stores for the event. Best effort.
+     */
+    public void deleteEventFaces(Integer eventId) {
+        for (Replica replica : replicas) {
+            try {
+                httpClient.send(HttpRequest.newBuilder(URI.create(replica.url() + "/delete-event-faces/" + eventId))
+                                .timeout(Duration.ofMillis(matchTimeoutMs))
+                                .DELETE()
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding());
+            } catch (Exception e) {
+                log.warn("Failed to delete event faces for event {} on {}: {}", eventId, replica.url(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    private FaceServiceUnavailableException unavailable(String message) {
+        long retryAfterMs = replicas.stream()
+                .mapToLong(replica -> replica.breaker().remainingOpenMs())
+                .min()
+                .orElse(0);
+        return new FaceServiceUnavailableException(message,
+                Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMs)));
+    }
+
+    private HttpResponse<byte[]> post(Replica replica, String endpoint, MultipartBody body, int timeoutMs)
+            throws IOException, InterruptedException {
+        // HTTP/1.1 sends one request per connection at a time, so this also caps the connections per route
+        if (!replica.connections().tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IOException("No free connection to " + replica.url());
+        }
+        CompletableFuture<HttpResponse<byte[]>> call = httpClient.sendAsync(
+                HttpRequest.newBuilder(URI.create(replica.url() + endpoint))
+                        .timeout(Duration.ofMillis(timeoutMs))
+                        .header("Content-Type", body.contentType())
+                        .POST(body.publisher())
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            // Cancelling the exchange closes its connection, so an abandoned hedge stops loading the face service
+            call.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            replica.connections().release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgePool.shutdownNow();
+        httpClient.shutdownNow();
+    }
+}
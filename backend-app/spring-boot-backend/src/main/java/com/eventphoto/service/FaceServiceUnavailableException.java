@@ -0,0 +1,19 @@
+package com.eventphoto.service;
+
+/**
+ * The face service cannot take the call right now: every replica's circuit is open, the call's bulkhead is full, or
+ * all replicas failed or timed out.
+ */
+public class FaceServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public FaceServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,10 @@
+package com.eventphoto.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Published after a batch of photos has been indexed and marked as such. Photos without faces map to an empty list.
+ */
+public record FacesIndexedEvent(Integer eventId, Map<Integer, List<float[]>> encodingsByPhoto) {
+}
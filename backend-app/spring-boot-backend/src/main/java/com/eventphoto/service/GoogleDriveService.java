@@ -1,132 +1,124 @@
 package com.eventphoto.service;
 
-import com.eventphoto.entity.GoogleToken;
-import com.eventphoto.repository.GoogleTokenRepository;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
+import com.eventphoto.storage.PhotoStorage;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.FileContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.GeneralSecurityException;
-import java.time.LocalDateTime;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Collections;
 
+/**
+ * Photo storage in Google Drive, the default: one folder per event under {@code google.drive.main-folder-id}.
+ */
 @Service
+@Profile("!fake-drive")
+@ConditionalOnProperty(name = "photo-storage.type", havingValue = "drive", matchIfMissing = true)
 @RequiredArgsConstructor
-public class GoogleDriveService {
+public class GoogleDriveService implements PhotoStorage {
 
-    private final GoogleTokenRepository tokenRepository;
-
-    @Value("${google.drive.oauth.client-id}")
-    private String clientId;
-
-    @Value("${google.drive.oauth.client-secret}")
-    private String clientSecret;
+    private final DriveClientHolder driveClientHolder;
 
     @Value("${google.drive.main-folder-id}")
     private String mainFolderId;
 
-    private Drive getDriveService() throws IOException, GeneralSecurityException {
-        GoogleToken token = tokenRepository.findFirstByOrderByIdDesc()
-                .orElseThrow(
-                        () -> new RuntimeException("Google Drive not connected. Please login via /api/oauth/login"));
-
-        GoogleCredential credential = new GoogleCredential.Builder()
-                .setTransport(new NetHttpTransport())
-                .setJsonFactory(GsonFactory.getDefaultInstance())
-                .setClientSecrets(clientId, clientSecret)
-                .build()
-                .setAccessToken(token.getAccessToken())
-                .setRefreshToken(token.getRefreshToken());
-
-        // Auto-refresh if expired
-        if (token.getExpiryTime().isBefore(LocalDateTime.now().plusMinutes(5))) {
-            credential.refreshToken();
-            token.setAccessToken(credential.getAccessToken());
-            token.setExpiryTime(LocalDateTime.now().plusSeconds(credential.getExpiresInSeconds()));
-            tokenRepository.save(token);
-        }
+    // Bytes per resumable upload request; a failed request resends at most this much
+    @Value("${google.drive.upload.chunk-size:8388608}")
+    private int chunkSize;
 
-        return new Drive.Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
-                GsonFactory.getDefaultInstance(),
-                credential)
-                .setApplicationName("EventPhotoSystem")
-                .build();
+    private Drive getDriveService() throws IOException {
+        return driveClientHolder.drive();
     }
 
-    public String createEventFolder(String eventName, Integer eventId) throws IOException {
-        try {
-            Drive drive = getDriveService();
-            File fileMetadata = new File();
-            fileMetadata.setName(String.format("Event_%d_%s", eventId, eventName));
-            fileMetadata.setMimeType("application/vnd.google-apps.folder");
-            fileMetadata.setParents(Collections.singletonList(mainFolderId));
-
-            File file = drive.files().create(fileMetadata)
-                    .setFields("id")
-                    .execute();
-            return file.getId();
-        } catch (GeneralSecurityException e) {
-            throw new IOException("Security error: " + e.getMessage());
-        }
+    @Override
+    public String createContainer(String eventName, Integer eventId) throws IOException {
+        Drive drive = getDriveService();
+        File fileMetadata = new File();
+        fileMetadata.setName(String.format("Event_%d_%s", eventId, eventName));
+        fileMetadata.setMimeType("application/vnd.google-apps.folder");
+        fileMetadata.setParents(Collections.singletonList(mainFolderId));
+
+        File file = drive.files().create(fileMetadata)
+                .setFields("id")
+                .execute();
+        return file.getId();
     }
 
-    public String uploadPhoto(String folderId, MultipartFile file) throws IOException {
-        try {
-            Drive drive = getDriveService();
-            File fileMetadata = new File();
-            fileMetadata.setName(file.getOriginalFilename());
-            fileMetadata.setParents(Collections.singletonList(folderId));
-
-            InputStream inputStream = file.getInputStream();
-            com.google.api.client.http.InputStreamContent mediaContent = new com.google.api.client.http.InputStreamContent(
-                    file.getContentType(), inputStream);
+    /**
+     * Uploads a photo from a file with Drive's resumable protocol in chunks of {@code google.drive.upload.chunk-size},
+     * so a dropped connection resumes from the last byte Drive committed instead of starting over.
+     */
+    @Override
+    public String put(String folderId, String name, String contentType, Path content) throws IOException {
+        File fileMetadata = new File();
+        fileMetadata.setName(name);
+        fileMetadata.setParents(Collections.singletonList(folderId));
+
+        Drive.Files.Create create = getDriveService().files()
+                .create(fileMetadata, new FileContent(contentType, content.toFile()))
+                .setFields("id");
+        configureUploader(create.getMediaHttpUploader(), false);
+        return create.execute().getId();
+    }
 
-            File driveFile = drive.files().create(fileMetadata, mediaContent)
-                    .setFields("id")
-                    .execute();
+    @Override
+    public String put(String folderId, String name, String contentType, byte[] content) throws IOException {
+        File fileMetadata = new File();
+        fileMetadata.setName(name);
+        fileMetadata.setParents(Collections.singletonList(folderId));
+
+        Drive.Files.Create create = getDriveService().files()
+                .create(fileMetadata, new ByteArrayContent(contentType, content))
+                .setFields("id");
+        // A single request for content that fits into one chunk; the byte array can be resent whole
+        configureUploader(create.getMediaHttpUploader(), content.length <= chunkSize);
+        return create.execute().getId();
+    }
 
-            return driveFile.getId();
-        } catch (GeneralSecurityException e) {
-            throw new IOException("Security error: " + e.getMessage());
+    // Deleting a folder in Drive deletes the files in it
+    @Override
+    public void deleteContainer(String folderId) throws IOException {
+        if (folderId != null) {
+            getDriveService().files().delete(folderId).execute();
         }
     }
 
-    public void deleteFolder(String folderId) throws IOException {
-        try {
-            if (folderId != null) {
-                getDriveService().files().delete(folderId).execute();
-            }
-        } catch (GeneralSecurityException e) {
-            throw new IOException("Security error: " + e.getMessage());
-        }
+    @Override
+    public void delete(String fileId) throws IOException {
+        getDriveService().files().delete(fileId).execute();
     }
 
-    public void deleteFile(String fileId) throws IOException {
-        deleteFolder(fileId);
+    @Override
+    public InputStream open(String fileId) throws IOException {
+        return getDriveService().files().get(fileId).executeMediaAsInputStream();
     }
 
-    public byte[] downloadFile(String fileId) throws IOException {
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            getDriveService().files().get(fileId).executeMediaAndDownloadTo(outputStream);
-            return outputStream.toByteArray();
-        } catch (GeneralSecurityException e) {
-            throw new IOException("Security error: " + e.getMessage());
-        }
+    @Override
+    public InputStream openRange(String fileId, long offset, long length) throws IOException {
+        Drive.Files.Get get = getDriveService().files().get(fileId);
+        get.getRequestHeaders().setRange("bytes=" + offset + "-" + (offset + length - 1));
+        return get.executeMediaAsInputStream();
+    }
+
+    @Override
+    public void downloadTo(String fileId, OutputStream out) throws IOException {
+        getDriveService().files().get(fileId).executeMediaAndDownloadTo(out);
     }
 
-    public String getTemporaryDownloadLink(String fileId) {
-        return "/photo/download/" + fileId;
+    private void configureUploader(MediaHttpUploader uploader, boolean direct) {
+        // Drive requires chunks in multiples of 256 KB
+        int unit = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+        uploader.setChunkSize(Math.max(1, chunkSize / unit) * unit);
+        uploader.setDirectUploadEnabled(direct);
     }
 }
@@ -0,0 +1,44 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.IndexingJob;
+import com.eventphoto.repository.IndexingJobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class IndexingJobService {
+
+    private final IndexingJobRepository indexingJobRepository;
+
+    /**
+     * Jobs leased together under one token. {@code jobs} carry the attempt count including this run.
+     */
+    public record Claim(String token, List<IndexingJob> jobs) {
+    }
+
+    /**
+     * Leases up to {@code limit} due jobs, highest priority first. Rows locked by another node's claim are skipped
+     * rather than waited on, so concurrent workers never block each other.
+     */
+    @Transactional
+    public Claim claim(int limit, long leaseSeconds) {
+        List<IndexingJob> jobs = indexingJobRepository.lockAvailable(limit);
+        if (jobs.isEmpty()) {
+            return new Claim(null, List.of());
+        }
+        String token = UUID.randomUUID().toString();
+        indexingJobRepository.lease(jobs.stream().map(IndexingJob::getId).collect(Collectors.toList()), token,
+                leaseSeconds);
+        jobs.forEach(job -> {
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLeaseToken(token);
+        });
+        return new Claim(token, jobs);
+    }
+}
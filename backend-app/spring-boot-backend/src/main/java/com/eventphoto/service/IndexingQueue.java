@@ -0,0 +1,324 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.IndexingJob;
+import com.eventphoto.entity.Photo;
+import com.eventphoto.repository.IndexingJobRepository;
+import com.eventphoto.repository.PhotoRepository;
+import com.eventphoto.storage.PhotoStorage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Durable face indexing queue backed by the indexing_jobs table. Each node runs {@code indexing-queue.workers}
+ * threads that lease batches of due jobs and send them to the face service, so a burst of uploads drains at a rate
+ * set by the worker count and batch size, and queued work survives restarts and deploys. Failed jobs are retried
+ * with exponential backoff until {@code indexing-queue.max-attempts}, then kept as FAILED.
+ *
+ * <p>The spool file of a fresh upload is kept (within {@code indexing-queue.spool-bytes}) so the usual case skips a
+ * Drive download; any job without it, e.g. after a restart, downloads its photo from Drive.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IndexingQueue {
+
+    public static final int PRIORITY_UPLOAD = 10;
+    public static final int PRIORITY_REINDEX = 0;
+
+    private final IndexingJobService indexingJobService;
+    private final IndexingJobRepository indexingJobRepository;
+    private final PhotoRepository photoRepository;
+    private final PhotoStorage photoStorage;
+    private final FaceRecognitionService faceRecognitionService;
+
+    private final Map<Integer, Upload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong uploadedByteCount = new AtomicLong();
+    private final Object wakeUp = new Object();
+    private ExecutorService workerPool;
+    private volatile boolean running;
+
+    // Parallel batches per node
+    @Value("${indexing-queue.workers:2}")
+    private int workers;
+
+    @Value("${indexing-queue.batch-size:16}")
+    private int batchSize;
+
+    // How often an idle worker looks for due jobs; new uploads on this node wake it immediately
+    @Value("${indexing-queue.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    // Must outlast the slowest batch, otherwise another node starts the same photos again
+    @Value("${indexing-queue.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${indexing-queue.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${indexing-queue.backoff-seconds:30}")
+    private long backoffSeconds;
+
+    @Value("${indexing-queue.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${indexing-queue.spool-bytes:67108864}")
+    private long spoolBytes;
+
+    private record Upload(UploadSpool.Spooled spool, long queuedAt) {
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        workerPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "indexing-queue-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        workerPool.execute(this::recoverUnindexed);
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
+    }
+
+    /**
+     * Queues a freshly uploaded photo. The job is committed before this returns.
+     */
+    public void submit(Integer photoId, UploadSpool.Spooled spool) {
+        // The file is only read when the job runs, so waiting jobs hold disk rather than heap
+        if (uploadedByteCount.addAndGet(spool.size()) <= spoolBytes) {
+            uploads.put(photoId, new Upload(spool.retain(), System.currentTimeMillis()));
+        } else {
+            uploadedByteCount.addAndGet(-spool.size());
+        }
+        try {
+            indexingJobRepository.enqueue(List.of(photoId), PRIORITY_UPLOAD);
+        } catch (Exception e) {
+            // The photo is saved unindexed; the startup recovery queues it
+            release(photoId);
+            log.error("Failed to queue photo {} for indexing: {}", photoId, e.getMessage());
+            return;
+        }
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    /**
+     * Queues existing photos behind fresh uploads; their images are downloaded from Drive when they run.
+     */
+    public int enqueue(Collection<Integer> photoIds) {
+        if (photoIds.isEmpty()) {
+            return 0;
+        }
+        indexingJobRepository.enqueue(photoIds, PRIORITY_REINDEX);
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+        return photoIds.size();
+    }
+
+    // Photos left unindexed by a crash or by the old in-memory indexing get a job on startup
+    private void recoverUnindexed() {
+        try {
+            int queued = indexingJobRepository.enqueueUnindexed(PRIORITY_REINDEX);
+            if (queued > 0) {
+                log.info("Queued {} unindexed photos that had no indexing job", queued);
+            }
+        } catch (Exception e) {
+            log.error("Failed to queue unindexed photos: {}", e.getMessage());
+        }
+    }
+
+    private void work() {
+        while (running) {
+            int claimed = 0;
+            try {
+                // Leave jobs queued while the face service's circuit is open instead of burning their attempts
+                if (!faceRecognitionService.isFaceServiceAvailable()) {
+                    sleep();
+                    continue;
+                }
+                IndexingJobService.Claim claim = indexingJobService.claim(batchSize, leaseSeconds);
+                claimed = claim.jobs().size();
+                if (claimed > 0) {
+                    process(claim);
+                }
+            } catch (Exception e) {
+                log.error("Indexing queue worker failed: {}", e.getMessage());
+            }
+            // A full batch means there is more backlog; keep draining without waiting
+            if (claimed < batchSize) {
+                dropStaleUploads();
+                sleep();
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            synchronized (wakeUp) {
+                wakeUp.wait(pollIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    private void process(IndexingJobService.Claim claim) {
+        Map<Integer, Photo> photos = photoRepository.findAllById(
+                        claim.jobs().stream().map(IndexingJob::getPhotoId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Photo::getId, Function.identity()));
+
+        Map<Integer, List<IndexingJob>> byEvent = new LinkedHashMap<>();
+        List<Long> done = new ArrayList<>();
+        for (IndexingJob job : claim.jobs()) {
+            if (photos.containsKey(job.getPhotoId())) {
+                byEvent.computeIfAbsent(job.getEventId(), id -> new ArrayList<>()).add(job);
+            } else {
+                // The photo was deleted while its job waited
+                done.add(job.getId());
+            }
+        }
+
+        byEvent.forEach((eventId, jobs) -> {
+            List<Closeable> held = new ArrayList<>();
+            try {
+                index(claim, eventId, jobs, photos, held, done);
+            } finally {
+                for (Closeable file : held) {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                        log.warn("Could not clean up an indexed image file: {}", e.getMessage());
+                    }
+                }
+            }
+        });
+
+        if (!done.isEmpty()) {
+            indexingJobRepository.complete(done, claim.token());
+        }
+    }
+
+    // Indexes one event's part of a claim; every file handed out is added to held, which the caller cleans up
+    private void index(IndexingJobService.Claim claim, Integer eventId, List<IndexingJob> jobs,
+                       Map<Integer, Photo> photos, List<Closeable> held, List<Long> done) {
+        Map<Integer, Path> images = new LinkedHashMap<>();
+        Map<Integer, IndexingJob> byPhoto = new LinkedHashMap<>();
+        for (IndexingJob job : jobs) {
+            try {
+                images.put(job.getPhotoId(), imageFile(photos.get(job.getPhotoId()), held));
+                byPhoto.put(job.getPhotoId(), job);
+            } catch (Exception e) {
+                fail(claim.token(), job, "Download failed: " + e.getMessage());
+            }
+        }
+        if (images.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            Set<Integer> indexed = Set.copyOf(faceRecognitionService.indexFaces(eventId, images));
+            byPhoto.forEach((photoId, job) -> {
+                if (indexed.contains(photoId)) {
+                    done.add(job.getId());
+                } else {
+                    fail(claim.token(), job, "Face service could not process the image");
+                }
+            });
+            log.info("Indexed {} of {} photos for event {} in {} ms", indexed.size(), images.size(), eventId,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to index batch of {} photos for event {}: {}", images.size(), eventId,
+                    e.getMessage());
+            byPhoto.values().forEach(job -> fail(claim.token(), job, e.getMessage()));
+        }
+    }
+
+    // The spooled upload when this node still has it, otherwise a temp file streamed from storage
+    private Path imageFile(Photo photo, List<Closeable> held) throws IOException {
+        Upload upload = uploads.remove(photo.getId());
+        if (upload != null) {
+            held.add(() -> release(upload));
+            return upload.spool().path();
+        }
+        Path file = Files.createTempFile("eventphoto-index-" + photo.getId() + "-", ".img");
+        held.add(() -> Files.deleteIfExists(file));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            photoStorage.downloadTo(photo.getDriveFileId(), out);
+        }
+        return file;
+    }
+
+    private void release(Integer photoId) {
+        Upload upload = uploads.remove(photoId);
+        if (upload != null) {
+            release(upload);
+        }
+    }
+
+    private void release(Upload upload) {
+        uploadedByteCount.addAndGet(-upload.spool().size());
+        upload.spool().release();
+    }
+
+    // Another node may have run the job, in which case nobody here will ever ask for the bytes
+    private void dropStaleUploads() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(leaseSeconds);
+        uploads.forEach((photoId, upload) -> {
+            if (upload.queuedAt() < cutoff) {
+                release(photoId);
+            }
+        });
+    }
+
+    private void fail(String token, IndexingJob job, String error) {
+        String message = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        if (job.getAttempts() >= maxAttempts) {
+            log.warn("Giving up indexing photo {} after {} attempts: {}", job.getPhotoId(), job.getAttempts(),
+                    message);
+            indexingJobRepository.giveUp(job.getId(), token, message);
+            return;
+        }
+        // Exponential backoff with jitter, so a face service outage is not hammered by every node at once
+        long delay = Math.min(maxBackoffSeconds, backoffSeconds << Math.min(job.getAttempts() - 1, 20));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        indexingJobRepository.retryLater(job.getId(), token, delay, message);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        workerPool.shutdownNow();
+        if (!workerPool.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Indexing workers still running at shutdown; their jobs are retried once the lease runs out");
+        }
+    }
+}
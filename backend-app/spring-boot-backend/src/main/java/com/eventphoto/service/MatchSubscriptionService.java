@@ -0,0 +1,387 @@
+package com.eventphoto.service;
+
+import com.eventphoto.dto.PhotoMatchResponse;
+import com.eventphoto.face.EventFaceIndex;
+import com.eventphoto.face.FaceDistance;
+import com.eventphoto.face.FaceMatch;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Guests register their selfie embedding for an event once and get new matches pushed over Server-Sent Events as
+ * photos are indexed. Each new face is compared once against the packed embeddings of the event's guests, instead
+ * of every guest re-scanning the whole event. Matches pushed while a guest is disconnected are buffered and
+ * replayed on reconnect using the SSE Last-Event-ID.
+ *
+ * <p>Matching and sending run on a pool of their own, never on the indexing worker that published the event. Each
+ * subscription has an outbox drained by at most one task at a time, and no network write happens under a
+ * subscription's lock, so a slow client only holds up its own stream.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MatchSubscriptionService {
+
+    private static final int DIM = EventFaceIndex.DIMENSIONS;
+    // Expired subscriptions are purged once a minute, so capacity frees up no sooner than that
+    private static final long CAPACITY_RETRY_SECONDS = 60;
+
+    private final FaceRecognitionService faceRecognitionService;
+    private final PhotoService photoService;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Map<Integer, Guests> guestsByEvent = new ConcurrentHashMap<>();
+    // Subscriptions registered or being registered, bounded by maxTotal
+    private final AtomicInteger live = new AtomicInteger();
+    private ScheduledExecutorService reaper;
+    private ExecutorService pusher;
+
+    @Value("${face-recognition.match-tolerance:0.5}")
+    private float matchTolerance;
+
+    // Disconnected subscriptions are dropped after this long
+    @Value("${match-subscriptions.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    @Value("${match-subscriptions.max-per-event:5000}")
+    private int maxPerEvent;
+
+    // Across all events; each subscription keeps its embedding and replay buffer in memory
+    @Value("${match-subscriptions.max-total:50000}")
+    private int maxTotal;
+
+    @Value("${match-subscriptions.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    @Value("${match-subscriptions.replay-buffer:100}")
+    private int replayBuffer;
+
+    @Value("${match-subscriptions.push-threads:4}")
+    private int pushThreads;
+
+    private static final class Subscription {
+        final String id;
+        final Integer eventId;
+        final float[] encoding;
+        final ArrayDeque<Pushed> recent = new ArrayDeque<>();
+        // Not yet sent to the current emitter
+        final ArrayDeque<Pushed> outbox = new ArrayDeque<>();
+        SseEmitter emitter;
+        boolean draining;
+        long sequence;
+        long lastSeen = System.currentTimeMillis();
+
+        Subscription(String id, Integer eventId, float[] encoding) {
+            this.id = id;
+            this.eventId = eventId;
+            this.encoding = encoding;
+        }
+    }
+
+    private record Pushed(long sequence, PhotoMatchResponse match) {
+    }
+
+    // Copy-on-write: embeddings packed back to back so a new face is one pass over the array
+    private record Guests(float[] encodings, Subscription[] subscriptions) {
+        static final Guests EMPTY = new Guests(new float[0], new Subscription[0]);
+    }
+
+    @PostConstruct
+    void start() {
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "match-subscription-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.MINUTES);
+        pusher = Executors.newFixedThreadPool(pushThreads, r -> {
+            Thread t = new Thread(r, "match-subscription-push");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        pusher.shutdownNow();
+        subscriptions.values().forEach(subscription -> {
+            synchronized (subscription) {
+                if (subscription.emitter != null) {
+                    subscription.emitter.complete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers a guest's selfie for an event. The caller checks that the event exists and is active.
+     *
+     * @return the subscription id, or null when no face was found in the selfie
+     * @throws SubscriptionCapacityException when the event or the node has no room for another subscription
+     */
+    public String subscribe(Integer eventId, byte[] selfie) {
+        // Taken before the selfie is embedded, so a full node does not spend face service calls
+        if (live.incrementAndGet() > maxTotal) {
+            live.decrementAndGet();
+            throw new SubscriptionCapacityException("Too many live subscriptions", CAPACITY_RETRY_SECONDS);
+        }
+        boolean registered = false;
+        try {
+            float[] encoding = faceRecognitionService.embedFace(selfie);
+            if (encoding == null) {
+                return null;
+            }
+            Subscription subscription = new Subscription(UUID.randomUUID().toString(), eventId, encoding);
+            guestsByEvent.compute(eventId, (id, guests) -> {
+                Guests current = guests != null ? guests : Guests.EMPTY;
+                if (current.subscriptions().length >= maxPerEvent) {
+                    throw new SubscriptionCapacityException("Too many live subscriptions for event " + eventId,
+                            CAPACITY_RETRY_SECONDS);
+                }
+                int n = current.subscriptions().length;
+                float[] encodings = Arrays.copyOf(current.encodings(), (n + 1) * DIM);
+                System.arraycopy(encoding, 0, encodings, n * DIM, DIM);
+                Subscription[] all = Arrays.copyOf(current.subscriptions(), n + 1);
+                all[n] = subscription;
+                return new Guests(encodings, all);
+            });
+            subscriptions.put(subscription.id, subscription);
+            registered = true;
+            return subscription.id;
+        } finally {
+            if (!registered) {
+                live.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Opens the event stream of a subscription, replacing any stream it already had.
+     *
+     * @param lastEventId the last match the client saw; buffered matches after it are replayed
+     * @return null when the subscription does not exist (or expired)
+     */
+    public SseEmitter connect(Integer eventId, String subscriptionId, Long lastEventId) {
+        Subscription subscription = subscriptions.get(subscriptionId);
+        if (subscription == null || !subscription.eventId.equals(eventId)) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Runnable detach = () -> {
+            synchronized (subscription) {
+                if (subscription.emitter == emitter) {
+                    subscription.emitter = null;
+                    subscription.lastSeen = System.currentTimeMillis();
+                }
+            }
+        };
+        emitter.onCompletion(detach);
+        emitter.onTimeout(detach);
+        emitter.onError(e -> detach.run());
+
+        synchronized (subscription) {
+            if (subscription.emitter != null) {
+                subscription.emitter.complete();
+            }
+            subscription.emitter = emitter;
+            subscription.lastSeen = System.currentTimeMillis();
+            subscription.outbox.clear();
+            long after = lastEventId != null ? lastEventId : 0;
+            for (Pushed pushed : subscription.recent) {
+                if (pushed.sequence() > after) {
+                    subscription.outbox.addLast(pushed);
+                }
+            }
+            startDrain(subscription);
+        }
+        return emitter;
+    }
+
+    public boolean unsubscribe(Integer eventId, String subscriptionId) {
+        Subscription subscription = subscriptions.get(subscriptionId);
+        if (subscription == null || !subscription.eventId.equals(eventId)) {
+            return false;
+        }
+        remove(subscription);
+        synchronized (subscription) {
+            if (subscription.emitter != null) {
+                subscription.emitter.complete();
+            }
+        }
+        return true;
+    }
+
+    @EventListener
+    public void onFacesIndexed(FacesIndexedEvent event) {
+        Guests guests = guestsByEvent.get(event.eventId());
+        if (guests == null || guests.subscriptions().length == 0) {
+            return;
+        }
+        try {
+            pusher.execute(() -> pushMatches(event));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private void pushMatches(FacesIndexedEvent event) {
+        Guests guests = guestsByEvent.get(event.eventId());
+        if (guests == null) {
+            return;
+        }
+
+        float limit = matchTolerance * matchTolerance;
+        Map<Subscription, List<FaceMatch>> matched = new HashMap<>();
+        event.encodingsByPhoto().forEach((photoId, faces) -> {
+            for (int g = 0; g < guests.subscriptions().length; g++) {
+                FaceMatch best = null;
+                for (int f = 0; f < faces.size(); f++) {
+                    float d2 = FaceDistance.squared(faces.get(f), guests.encodings(), g * DIM, DIM);
+                    if (d2 <= limit && (best == null || d2 < best.distance() * best.distance())) {
+                        best = new FaceMatch(photoId, f, (float) Math.sqrt(d2));
+                    }
+                }
+                if (best != null) {
+                    matched.computeIfAbsent(guests.subscriptions()[g], s -> new ArrayList<>()).add(best);
+                }
+            }
+        });
+
+        matched.forEach((subscription, matches) -> {
+            matches.sort(FaceMatch.RANKING);
+            List<PhotoMatchResponse> responses = photoService.toMatchResponses(matches);
+            synchronized (subscription) {
+                for (PhotoMatchResponse response : responses) {
+                    Pushed pushed = new Pushed(++subscription.sequence, response);
+                    subscription.recent.addLast(pushed);
+                    if (subscription.recent.size() > replayBuffer) {
+                        subscription.recent.removeFirst();
+                    }
+                    if (subscription.emitter != null) {
+                        subscription.outbox.addLast(pushed);
+                    }
+                }
+                startDrain(subscription);
+            }
+        });
+        if (!matched.isEmpty()) {
+            log.debug("Pushed new matches of event {} to {} guests", event.eventId(), matched.size());
+        }
+    }
+
+    // Caller holds the subscription's lock
+    private void startDrain(Subscription subscription) {
+        if (subscription.draining || subscription.emitter == null || subscription.outbox.isEmpty()) {
+            return;
+        }
+        subscription.draining = true;
+        try {
+            pusher.execute(() -> drain(subscription));
+        } catch (RejectedExecutionException e) {
+            subscription.draining = false;
+        }
+    }
+
+    /**
+     * Sends the outbox in order, taking the lock only to pick the next match and never while writing.
+     */
+    private void drain(Subscription subscription) {
+        while (true) {
+            Pushed next;
+            SseEmitter emitter;
+            synchronized (subscription) {
+                next = subscription.outbox.peekFirst();
+                emitter = subscription.emitter;
+                if (next == null || emitter == null) {
+                    subscription.draining = false;
+                    return;
+                }
+                subscription.outbox.removeFirst();
+            }
+            if (!send(emitter, next)) {
+                synchronized (subscription) {
+                    // A reconnect may have replaced the emitter meanwhile; its outbox is still to be sent
+                    if (subscription.emitter == emitter) {
+                        // The client went away; it can reconnect and replay from its Last-Event-ID
+                        subscription.emitter = null;
+                        subscription.lastSeen = System.currentTimeMillis();
+                        subscription.outbox.clear();
+                        subscription.draining = false;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean send(SseEmitter emitter, Pushed pushed) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(pushed.sequence()))
+                    .name("match")
+                    .data(pushed.match()));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+        for (Subscription subscription : subscriptions.values()) {
+            boolean expired;
+            synchronized (subscription) {
+                expired = subscription.emitter == null && subscription.lastSeen < cutoff;
+            }
+            if (expired) {
+                remove(subscription);
+            }
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        if (subscriptions.remove(subscription.id) != null) {
+            live.decrementAndGet();
+        }
+        guestsByEvent.computeIfPresent(subscription.eventId, (id, guests) -> {
+            int index = Arrays.asList(guests.subscriptions()).indexOf(subscription);
+            if (index < 0) {
+                return guests;
+            }
+            int n = guests.subscriptions().length;
+            if (n == 1) {
+                return null;
+            }
+            float[] encodings = new float[(n - 1) * DIM];
+            System.arraycopy(guests.encodings(), 0, encodings, 0, index * DIM);
+            System.arraycopy(guests.encodings(), (index + 1) * DIM, encodings, index * DIM, (n - index - 1) * DIM);
+            Subscription[] rest = new Subscription[n - 1];
+            System.arraycopy(guests.subscriptions(), 0, rest, 0, index);
+            System.arraycopy(guests.subscriptions(), index + 1, rest, index, n - index - 1);
+            return new Guests(encodings, rest);
+        });
+    }
+}
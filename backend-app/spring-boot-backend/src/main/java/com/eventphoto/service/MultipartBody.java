@@ -0,0 +1,65 @@
+package com.eventphoto.service;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * multipart/form-data request body that is streamed part by part instead of being assembled in memory. Byte array
+ * parts are sent straight from the caller's array and file parts from disk, so a large photo is never copied into a
+ * second buffer.
+ */
+final class MultipartBody {
+
+    private final String boundary = "----eventphoto-" + UUID.randomUUID();
+    private final List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+
+    MultipartBody field(String name, Object value) {
+        parts.add(HttpRequest.BodyPublishers.ofString(
+                partHeader(name, null) + value + "\r\n", StandardCharsets.UTF_8));
+        return this;
+    }
+
+    MultipartBody file(String name, String filename, byte[] content) {
+        return file(name, filename, HttpRequest.BodyPublishers.ofByteArray(content));
+    }
+
+    MultipartBody file(String name, String filename, Path content) {
+        try {
+            return file(name, filename, HttpRequest.BodyPublishers.ofFile(content));
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MultipartBody file(String name, String filename, HttpRequest.BodyPublisher content) {
+        parts.add(HttpRequest.BodyPublishers.ofString(partHeader(name, filename), StandardCharsets.UTF_8));
+        parts.add(content);
+        parts.add(HttpRequest.BodyPublishers.ofString("\r\n"));
+        return this;
+    }
+
+    String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    HttpRequest.BodyPublisher publisher() {
+        List<HttpRequest.BodyPublisher> all = new ArrayList<>(parts);
+        all.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "--\r\n"));
+        return HttpRequest.BodyPublishers.concat(all.toArray(HttpRequest.BodyPublisher[]::new));
+    }
+
+    private String partHeader(String name, String filename) {
+        StringBuilder header = new StringBuilder("--").append(boundary)
+                .append("\r\nContent-Disposition: form-data; name=\"").append(name).append('"');
+        if (filename != null) {
+            header.append("; filename=\"").append(filename).append("\"\r\nContent-Type: application/octet-stream");
+        }
+        return header.append("\r\n\r\n").toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.Photo;
+import com.eventphoto.image.ImageScaler;
+import com.eventphoto.image.PerceptualHash;
+import com.eventphoto.repository.PhotoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * Duplicate detection within an event. A file whose SHA-256 is already in the event is not stored again; the upload
+ * answers with the existing photo. A photo taken within {@code photo-dedup.burst-max-gap-seconds} of one of the
+ * photographer's last {@code photo-dedup.burst-window} photos, with a dHash within
+ * {@code photo-dedup.burst-max-distance} bits of it, is a later frame of that burst. It is indexed like any photo,
+ * but keeps only the faces its first frame does not have, so guests matching the burst get the first frame once
+ * and later frames only for the people who are new in them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PhotoDedupService {
+
+    // Long edge the photo is decoded at when no copy was generated to hash
+    private static final int HASH_LONG_EDGE = 320;
+
+    private final PhotoRepository photoRepository;
+
+    @Value("${photo-dedup.enabled:true}")
+    private boolean enabled;
+
+    // Negative turns burst detection off
+    @Value("${photo-dedup.burst-max-distance:4}")
+    private int burstMaxDistance;
+
+    @Value("${photo-dedup.burst-window:20}")
+    private int burstWindow;
+
+    // Frames further apart than this are separate shots however alike they look, e.g. posed groups in one spot
+    @Value("${photo-dedup.burst-max-gap-seconds:3}")
+    private long burstMaxGapSeconds;
+
+    /**
+     * Hex SHA-256 of a file, or null when deduplication is off.
+     */
+    public String contentHash(Path file) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * When the photo was taken: its EXIF DateTimeOriginal, or now for files without one.
+     */
+    public LocalDateTime captureTime(Path file) {
+        try {
+            LocalDateTime captured = ImageScaler.captureTime(file);
+            if (captured != null) {
+                return captured;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read capture time: {}", e.toString());
+        }
+        return LocalDateTime.now();
+    }
+
+    /**
+     * The event's earlier photo with the same content, or null.
+     */
+    public Photo findDuplicate(Integer eventId, String contentHash) {
+        if (contentHash == null) {
+            return null;
+        }
+        return photoRepository.findFirstByEventIdAndContentHashOrderByIdAsc(eventId, contentHash).orElse(null);
+    }
+
+    /**
+     * Makes the photo a member of a recent burst when it was taken right after one of its frames and looks like it:
+     * sets its representative. The perceptual hash normally comes from the copies generated on upload;
+     * {@code original} is decoded only when there is none.
+     *
+     * @return true when the photo joined a burst
+     */
+    public boolean assignBurst(Photo photo, Path original) {
+        if (!enabled || burstMaxDistance < 0 || photo.getCapturedAt() == null) {
+            return false;
+        }
+        try {
+            if (photo.getPerceptualHash() == null) {
+                BufferedImage image = ImageScaler.readUpright(original, HASH_LONG_EDGE);
+                if (image == null) {
+                    return false;
+                }
+                photo.setPerceptualHash(PerceptualHash.dHash(image));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not hash photo for burst detection: {}", e.toString());
+            return false;
+        }
+
+        long hash = photo.getPerceptualHash();
+        for (PhotoRepository.PerceptualHashRow candidate : photoRepository.findRecentRepresentatives(
+                photo.getEvent().getId(), photo.getUploadedBy().getId(), PageRequest.of(0, burstWindow))) {
+            if (!candidate.getId().equals(photo.getId()) && candidate.getCapturedAt() != null
+                    && Math.abs(Duration.between(candidate.getCapturedAt(), photo.getCapturedAt()).getSeconds())
+                    <= burstMaxGapSeconds
+                    && PerceptualHash.distance(hash, candidate.getPerceptualHash()) <= burstMaxDistance) {
+                photo.setRepresentativePhotoId(candidate.getId());
+                return true;
+            }
+        }
+        return false;
+    }
+}
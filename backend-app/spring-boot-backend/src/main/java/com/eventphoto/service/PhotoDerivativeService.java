@@ -0,0 +1,111 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.Photo;
+import com.eventphoto.image.ImageScaler;
+import com.eventphoto.image.PerceptualHash;
+import com.eventphoto.storage.PhotoStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Small, medium and full-screen JPEG copies of each upload, stored in the event's Drive folder next to the original
+ * so galleries never have to fetch the original. The photo is decoded once at the full size and each smaller copy is
+ * scaled from the previous one; the copies are uploaded in parallel on the {@link DriveUploadPool}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PhotoDerivativeService {
+
+    private final PhotoStorage photoStorage;
+    private final DriveUploadPool driveUploadPool;
+
+    @Value("${photo-derivatives.enabled:true}")
+    private boolean enabled;
+
+    @Value("${photo-derivatives.small-long-edge:320}")
+    private int smallLongEdge;
+
+    @Value("${photo-derivatives.medium-long-edge:1024}")
+    private int mediumLongEdge;
+
+    @Value("${photo-derivatives.full-long-edge:2560}")
+    private int fullLongEdge;
+
+    @Value("${photo-derivatives.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    // Larger images are served from their original only; decoding them would take more heap than a copy is worth
+    @Value("${photo-derivatives.max-pixels:100000000}")
+    private long maxPixels;
+
+    /**
+     * Generates and uploads the copies that are smaller than the original and records their file ids on the photo.
+     * Copies are named after {@code name}, the original's file name. The original is decoded straight from its file.
+     * Failures, and images over {@code photo-derivatives.max-pixels}, leave the photo served from its original.
+     */
+    public void generate(Photo photo, String folderId, String name, Path original) {
+        if (!enabled) {
+            return;
+        }
+        String base = name == null ? "photo" : name.replaceFirst("\\.[^.]*$", "");
+        CompletableFuture<String> full = null;
+        CompletableFuture<String> medium = null;
+        CompletableFuture<String> small = null;
+        try {
+            ImageScaler.Info info = ImageScaler.info(original);
+            if (info == null) {
+                return;
+            }
+            if ((long) info.width() * info.height() > maxPixels) {
+                log.info("Not generating derivatives of {}: {}x{} is over {} pixels", base, info.width(),
+                        info.height(), maxPixels);
+                return;
+            }
+            BufferedImage fullImage = ImageScaler.readUpright(original, fullLongEdge);
+            if (info.longEdge() > fullLongEdge || info.orientation() != 1) {
+                full = upload(folderId, base, "full", fullImage);
+            }
+            BufferedImage mediumImage = ImageScaler.scaleDown(fullImage, mediumLongEdge);
+            if (mediumImage != fullImage) {
+                medium = upload(folderId, base, "medium", mediumImage);
+            }
+            BufferedImage smallImage = ImageScaler.scaleDown(mediumImage, smallLongEdge);
+            if (smallImage != mediumImage) {
+                small = upload(folderId, base, "small", smallImage);
+            }
+            // Burst detection hashes the smallest copy instead of decoding the photo again
+            photo.setPerceptualHash(PerceptualHash.dHash(smallImage));
+        } catch (Exception e) {
+            log.warn("Could not generate derivatives of {}: {}", base, e.toString());
+        }
+        photo.setFullFileId(uploaded(full, base));
+        photo.setMediumFileId(uploaded(medium, base));
+        photo.setSmallFileId(uploaded(small, base));
+    }
+
+    private CompletableFuture<String> upload(String folderId, String base, String size, BufferedImage image)
+            throws Exception {
+        byte[] jpeg = ImageScaler.writeJpeg(image, jpegQuality);
+        return driveUploadPool.submit(() -> photoStorage.put(folderId, base + "_" + size + ".jpg",
+                "image/jpeg", jpeg));
+    }
+
+    private String uploaded(CompletableFuture<String> upload, String base) {
+        if (upload == null) {
+            return null;
+        }
+        try {
+            return DriveUploadPool.await(upload);
+        } catch (Exception e) {
+            log.warn("Could not upload a copy of {}: {}", base, e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.eventphoto.service;
+
+import com.eventphoto.entity.Photo;
+import com.eventphoto.repository.PhotoRepository;
+import com.eventphoto.storage.PhotoStorage;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Size-bounded disk cache of Drive files for the download endpoint, evicting the least recently used files. Files
+ * are streamed from Drive straight to disk and served from there, so no photo is held in the heap. Concurrent misses
+ * on one file share a single Drive download.
+ *
+ * <p>Each cached file is named {@code <fileId>.<sha256>}; the hash is the file's strong ETag and lets the index be
+ * rebuilt from the directory on restart.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PhotoFileCache {
+
+    // Drive file ids are URL-safe base64; anything else never reaches the file system
+    private static final Pattern FILE_ID = Pattern.compile("[A-Za-z0-9_-]{1,200}");
+
+    private final PhotoStorage photoStorage;
+    private final PhotoRepository photoRepository;
+
+    // Access-ordered, guarded by itself
+    private final LinkedHashMap<String, CachedFile> files = new LinkedHashMap<>(256, 0.75f, true);
+    // When each file was last served
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedFile>> fills = new ConcurrentHashMap<>();
+    private long totalBytes;
+    private Path dir;
+
+    @Value("${photo-cache.dir:photo-cache}")
+    private String cacheDir;
+
+    @Value("${photo-cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    // Files served this recently are not evicted, so a download in progress keeps its file
+    @Value("${photo-cache.min-age-ms:30000}")
+    private long minAgeMs;
+
+    /**
+     * A cached Drive file; {@code etag} is the hex SHA-256 of its content.
+     */
+    public record CachedFile(String fileId, Path path, long size, String etag, long lastModified) {
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        dir = Paths.get(cacheDir);
+        Files.createDirectories(dir);
+        List<CachedFile> found = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path path : entries) {
+                String name = path.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (name.endsWith(".tmp") || dot <= 0) {
+                    // Left behind by a fill that did not finish
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                found.add(new CachedFile(name.substring(0, dot), path, Files.size(path), name.substring(dot + 1),
+                        Files.getLastModifiedTime(path).toMillis()));
+            }
+        }
+        // Oldest first, so the most recently written files end up most recently used
+        found.sort(Comparator.comparingLong(CachedFile::lastModified));
+        synchronized (files) {
+            for (CachedFile file : found) {
+                add(file);
+                lastAccess.put(file.fileId(), file.lastModified());
+            }
+        }
+        log.info("Photo cache {} holds {} files ({} MB of {} MB)", dir.toAbsolutePath(), found.size(),
+                totalBytes >> 20, maxBytes >> 20);
+        evict();
+    }
+
+    public static boolean isValidFileId(String fileId) {
+        return fileId != null && FILE_ID.matcher(fileId).matches();
+    }
+
+    /**
+     * Returns the cached copy of a Drive file, downloading it first on a miss.
+     */
+    public CachedFile get(String fileId) throws IOException {
+        if (!isValidFileId(fileId)) {
+            throw new IllegalArgumentException("Invalid file id");
+        }
+        CachedFile cached = lookup(fileId);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<CachedFile> fill = new CompletableFuture<>();
+        CompletableFuture<CachedFile> running = fills.putIfAbsent(fileId, fill);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Another request may have finished the fill between the lookup and taking the slot
+            cached = lookup(fileId);
+            if (cached == null) {
+                cached = download(fileId);
+            }
+            fill.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            fill.completeExceptionally(e);
+            throw e;
+        } finally {
+            fills.remove(fileId, fill);
+        }
+    }
+
+    /**
+     * Drops a file from the cache, e.g. after it was deleted from Drive.
+     */
+    public void invalidate(String fileId) {
+        synchronized (files) {
+            CachedFile removed = files.remove(fileId);
+            if (removed != null) {
+                remove(removed);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached file of an event, originals and copies, so nothing of a deleted event is served from disk.
+     * Call before the photos are deleted from the database.
+     */
+    public void invalidateEvent(Integer eventId) {
+        for (Photo photo : photoRepository.findByEventId(eventId)) {
+            for (String fileId : new String[]{photo.getDriveFileId(), photo.getSmallFileId(),
+                    photo.getMediumFileId(), photo.getFullFileId()}) {
+                if (fileId != null) {
+                    invalidate(fileId);
+                }
+            }
+        }
+    }
+
+    private CachedFile lookup(String fileId) {
+        CachedFile cached;
+        synchronized (files) {
+            cached = files.get(fileId);
+        }
+        if (cached != null) {
+            lastAccess.put(fileId, System.currentTimeMillis());
+        }
+        return cached;
+    }
+
+    private CachedFile download(String fileId) throws IOException {
+        Path temp = dir.resolve(fileId + "." + UUID.randomUUID() + ".tmp");
+        MessageDigest digest = sha256();
+        try {
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)),
+                    digest)) {
+                photoStorage.downloadTo(fileId, out);
+            }
+            String etag = HexFormat.of().formatHex(digest.digest());
+            Path path = dir.resolve(fileId + "." + etag);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            CachedFile cached = new CachedFile(fileId, path, Files.size(path), etag,
+                    Files.getLastModifiedTime(path).toMillis());
+            synchronized (files) {
+                add(cached);
+            }
+            evict();
+            return cached;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Caller holds the files lock
+    private void add(CachedFile file) {
+        CachedFile previous = files.put(file.fileId(), file);
+        if (previous != null && !previous.path().equals(file.path())) {
+            remove(previous);
+        } else if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += file.size();
+        lastAccess.put(file.fileId(), System.currentTimeMillis());
+    }
+
+    // Caller holds the files lock
+    private void remove(CachedFile file) {
+        totalBytes -= file.size();
+        lastAccess.remove(file.fileId());
+        try {
+            // Open readers keep the deleted file's content until they close it
+            Files.deleteIfExists(file.path());
+        } catch (IOException e) {
+            log.warn("Could not delete cached photo {}: {}", file.path(), e.getMessage());
+        }
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        synchronized (files) {
+            Iterator<CachedFile> eldest = files.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                CachedFile file = eldest.next();
+                if (now - lastAccess.getOrDefault(file.fileId(), 0L) < minAgeMs) {
+                    continue;
+                }
+                eldest.remove();
+                remove(file);
+            }
+        }
+    }
+
+    private static CachedFile await(CompletableFuture<CachedFile> fill) throws IOException {
+        try {
+            return fill.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new UncheckedIOException(new IOException(e.getCause()));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
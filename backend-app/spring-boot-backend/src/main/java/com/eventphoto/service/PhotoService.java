@@ -1,94 +1,377 @@
 package com.eventphoto.service;
 
+import com.eventphoto.dto.MatchPageResponse;
+import com.eventphoto.dto.PhotoMatchResponse;
+import com.eventphoto.dto.PhotoPageResponse;
 import com.eventphoto.dto.PhotoResponse;
 import com.eventphoto.entity.Event;
 import com.eventphoto.entity.Photo;
 import com.eventphoto.entity.User;
+import com.eventphoto.face.FaceMatch;
 import com.eventphoto.repository.EventRepository;
 import com.eventphoto.repository.PhotoRepository;
 import com.eventphoto.repository.UserRepository;
+import com.eventphoto.storage.PhotoStorage;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class PhotoService {
 
     private final PhotoRepository photoRepository;
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
-    private final GoogleDriveService googleDriveService;
-    private final FaceRecognitionService faceRecognitionService;
+    private final PhotoStorage photoStorage;
+    private final IndexingQueue indexingQueue;
+    private final PhotoDerivativeService photoDerivativeService;
+    private final DriveUploadPool driveUploadPool;
+    private final UploadSpool uploadSpool;
+    private final PhotoDedupService photoDedupService;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    @Value("${face-recognition.match-tolerance:0.5}")
+    private float matchTolerance;
 
     public PhotoResponse uploadPhoto(Integer eventId, Integer photographerId, MultipartFile file) throws IOException {
-        Event event = eventRepository.findById(eventId)
-                .orElseThrow(() -> new RuntimeException("Event not found"));
+        Event event = prepareUploadEvent(eventId);
 
         User photographer = userRepository.findById(photographerId)
                 .orElseThrow(() -> new RuntimeException("Photographer not found"));
 
+        UploadSpool.Spooled spool = uploadSpool.spool(file);
+        try {
+            StoredPhoto stored = storePhoto(event, photographer, spool);
+            PhotoResponse response = mapToResponse(stored.photo());
+            response.setDuplicate(stored.duplicate());
+            return response;
+        } finally {
+            spool.release();
+        }
+    }
+
+    /**
+     * The photo an upload created, or with {@code duplicate} set, the event's existing photo with the same content.
+     */
+    public record StoredPhoto(Photo photo, boolean duplicate) {
+    }
+
+    /**
+     * Loads an event for uploading and creates its Drive folder if it has none yet.
+     */
+    public Event prepareUploadEvent(Integer eventId) {
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new RuntimeException("Event not found"));
+
         if (event.getDriveFolderId() == null) {
             // Automatic creation if folder is missing
             try {
-                String driveFolderId = googleDriveService.createEventFolder(event.getName(), event.getId());
+                String driveFolderId = photoStorage.createContainer(event.getName(), event.getId());
                 event.setDriveFolderId(driveFolderId);
                 eventRepository.save(event);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to automatically create Google Drive folder: " + e.getMessage());
             }
         }
+        return event;
+    }
 
-        // Upload to Google Drive
-        String driveFileId = googleDriveService.uploadPhoto(event.getDriveFolderId(), file);
+    /**
+     * Stores one spooled photo into an event prepared by {@link #prepareUploadEvent}. The caller keeps its reference
+     * to the spool file and releases it afterwards. A file the event already has is not stored again.
+     */
+    public StoredPhoto storePhoto(Event event, User photographer, UploadSpool.Spooled spool) throws IOException {
+        String contentHash = photoDedupService.contentHash(spool.path());
+        Photo existing = photoDedupService.findDuplicate(event.getId(), contentHash);
+        if (existing != null) {
+            return new StoredPhoto(existing, true);
+        }
 
         // Save photo metadata to database
         Photo photo = new Photo();
         photo.setEvent(event);
         photo.setUploadedBy(photographer);
-        photo.setDriveFileId(driveFileId);
         photo.setIndexed(false);
+        photo.setContentHash(contentHash);
+        photo.setCapturedAt(photoDedupService.captureTime(spool.path()));
+
+        storeInDrive(photo, event.getDriveFolderId(), spool);
+        photoDedupService.assignBurst(photo, spool.path());
+
+        Photo savedPhoto;
+        try {
+            savedPhoto = photoRepository.save(photo);
+        } catch (DataIntegrityViolationException e) {
+            // The same file finished uploading concurrently and got in first
+            Photo winner = photoDedupService.findDuplicate(event.getId(), contentHash);
+            if (winner == null) {
+                throw e;
+            }
+            deleteFromDrive(photo.getDriveFileId(), photo.getSmallFileId(), photo.getMediumFileId(),
+                    photo.getFullFileId());
+            return new StoredPhoto(winner, true);
+        }
+
+        // Queue for face indexing; later burst frames keep only the faces their first frame lacks
+        indexingQueue.submit(savedPhoto.getId(), spool);
 
-        Photo savedPhoto = photoRepository.save(photo);
+        return new StoredPhoto(savedPhoto, false);
+    }
 
-        // Trigger face indexing asynchronously
-        faceRecognitionService.indexFaceAsync(eventId, savedPhoto.getId(), file.getBytes());
+    /**
+     * Moves a staged photo into Drive and queues it for indexing with the staged file. Returns false when the photo
+     * was deleted meanwhile, in which case its Drive files are removed again.
+     */
+    public boolean storeStagedPhoto(Photo photo, UploadSpool.Spooled spool) throws IOException {
+        String folderId = prepareUploadEvent(photo.getEvent().getId()).getDriveFolderId();
+        storeInDrive(photo, folderId, spool);
+        photoDedupService.assignBurst(photo, spool.path());
 
-        return mapToResponse(savedPhoto);
+        int updated = photoRepository.completeStorage(photo.getId(), photo.getDriveFileId(), photo.getSmallFileId(),
+                photo.getMediumFileId(), photo.getFullFileId(), photo.getPerceptualHash(),
+                photo.getRepresentativePhotoId(), photo.getIndexed(), Photo.StorageStatus.STORED,
+                Photo.StorageStatus.PENDING_STORAGE);
+        if (updated == 0) {
+            deleteFromDrive(photo.getDriveFileId(), photo.getSmallFileId(), photo.getMediumFileId(),
+                    photo.getFullFileId());
+            return false;
+        }
+        indexingQueue.submit(photo.getId(), spool);
+        return true;
     }
 
+    // Sets the Drive ids of the original and its copies on the photo
+    private void storeInDrive(Photo photo, String folderId, UploadSpool.Spooled spool) throws IOException {
+        // Upload to Google Drive while the copies are generated and uploaded next to it
+        // The upload holds its own reference, as it may still be reading when copy generation fails
+        UploadSpool.Spooled file = spool.retain();
+        CompletableFuture<String> upload = driveUploadPool.submit(() -> {
+            try {
+                return photoStorage.put(folderId, file.name(), file.contentType(), file.path());
+            } finally {
+                file.release();
+            }
+        });
+
+        // Gallery-sized copies next to the original
+        photoDerivativeService.generate(photo, folderId, spool.name(), spool.path());
+        try {
+            photo.setDriveFileId(DriveUploadPool.await(upload));
+        } catch (IOException | RuntimeException e) {
+            deleteFromDrive(photo.getSmallFileId(), photo.getMediumFileId(), photo.getFullFileId());
+            throw e;
+        }
+    }
+
+    // Files of an upload that cannot be kept, e.g. copies whose original never reached Drive
+    private void deleteFromDrive(String... fileIds) {
+        for (String fileId : fileIds) {
+            if (fileId == null) {
+                continue;
+            }
+            try {
+                photoStorage.delete(fileId);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to delete Drive file {}: {}", fileId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Every photo of an event in upload order, for clients of the listing from before it was paged.
+     */
     public List<PhotoResponse> getEventPhotos(Integer eventId) {
-        List<Photo> photos = photoRepository.findByEventId(eventId);
-        return photos.stream().map(this::mapToResponse).collect(Collectors.toList());
+        return photoRepository.findFirstPageByEventId(eventId, Pageable.unpaged()).stream()
+                .map(this::mapToResponse)
+                .collect(Collectors.toList());
     }
 
-    public List<PhotoResponse> getMatchedPhotos(Integer eventId, List<Integer> photoIds) {
-        if (photoIds == null || photoIds.isEmpty()) {
+    /**
+     * One page of an event's photos in upload order. The cursor is the (createdAt, id) of the last photo returned, so
+     * each page is an index range scan whatever its depth, and photos uploaded meanwhile show up on later pages.
+     */
+    public PhotoPageResponse getEventPhotoPage(Integer eventId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One row more than asked tells whether another page follows
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<Photo> photos;
+        if (cursor != null && !cursor.isEmpty()) {
+            ByteBuffer after = decodePhotoCursor(cursor);
+            LocalDateTime createdAt = toCreatedAt(after.getLong(), after.getInt());
+            photos = photoRepository.findPageByEventIdAfter(eventId, createdAt, after.getInt(), page);
+        } else {
+            photos = photoRepository.findFirstPageByEventId(eventId, page);
+        }
+
+        boolean more = photos.size() > pageSize;
+        if (more) {
+            photos = photos.subList(0, pageSize);
+        }
+        return PhotoPageResponse.builder()
+                .items(photos.stream().map(this::mapToResponse).collect(Collectors.toList()))
+                .nextCursor(more ? encodePhotoCursor(photos.get(photos.size() - 1)) : null)
+                .build();
+    }
+
+    /**
+     * Loads photos in one query and returns them in the order of {@code photoIds}.
+     */
+    public List<PhotoResponse> getPhotosInOrder(List<Integer> photoIds) {
+        if (photoIds.isEmpty()) {
             return List.of();
         }
-        List<Photo> photos = photoRepository.findByEventId(eventId);
-        return photos.stream()
-                .filter(p -> photoIds.contains(p.getId()))
+        Map<Integer, Photo> byId = photoRepository.findAllById(photoIds).stream()
+                .collect(Collectors.toMap(Photo::getId, Function.identity()));
+        return photoIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * One page of a ranked match result. The cursor is the (distance, photo id) of the last item returned, so pages
+     * stay consistent while new uploads are patched into the cached result.
+     */
+    public MatchPageResponse getMatchPage(String matchId, List<FaceMatch> matches, String cursor, int limit) {
+        int from = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            FaceMatch after = decodeCursor(cursor);
+            while (from < matches.size() && FaceMatch.RANKING.compare(matches.get(from), after) <= 0) {
+                from++;
+            }
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<FaceMatch> page = matches.subList(from, Math.min(from + pageSize, matches.size()));
+        List<PhotoMatchResponse> items = toMatchResponses(page);
+
+        boolean more = from + page.size() < matches.size();
+        return MatchPageResponse.builder()
+                .matchId(matchId)
+                .total(matches.size())
+                .items(items)
+                .nextCursor(more && !page.isEmpty() ? encodeCursor(page.get(page.size() - 1)) : null)
+                .build();
+    }
+
+    /**
+     * Loads the matched photos in one query, keeping the order of {@code matches}.
+     */
+    public List<PhotoMatchResponse> toMatchResponses(List<FaceMatch> matches) {
+        List<PhotoResponse> photos = getPhotosInOrder(matches.stream().map(FaceMatch::photoId).toList());
+        Map<Integer, FaceMatch> byPhoto = matches.stream()
+                .collect(Collectors.toMap(FaceMatch::photoId, Function.identity()));
+        return photos.stream()
+                .map(photo -> {
+                    FaceMatch match = byPhoto.get(photo.getId());
+                    return PhotoMatchResponse.builder()
+                            .photo(photo)
+                            .distance(match.distance())
+                            .score(Math.max(0f, 1f - match.distance() / matchTolerance))
+                            .faceNumber(match.faceNumber())
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static String encodeCursor(FaceMatch last) {
+        ByteBuffer buffer = ByteBuffer.allocate(8).putFloat(last.distance()).putInt(last.photoId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private static FaceMatch decodeCursor(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != 8) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        float distance = buffer.getFloat();
+        return new FaceMatch(buffer.getInt(), 0, distance);
+    }
+
+    private static String encodePhotoCursor(Photo last) {
+        ByteBuffer buffer = ByteBuffer.allocate(16)
+                .putLong(last.getCreatedAt().toEpochSecond(ZoneOffset.UTC))
+                .putInt(last.getCreatedAt().getNano())
+                .putInt(last.getId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private static ByteBuffer decodePhotoCursor(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static LocalDateTime toCreatedAt(long epochSecond, int nanos) {
+        try {
+            return LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
     public long countPhotosByPhotographer(Integer photographerId) {
         return photoRepository.countByPhotographerId(photographerId);
     }
 
-    private PhotoResponse mapToResponse(Photo photo) {
+    public PhotoResponse mapToResponse(Photo photo) {
+        if (photo.getStorageStatus() == Photo.StorageStatus.PENDING_STORAGE) {
+            // Nothing to download until the staged file is in Drive
+            return PhotoResponse.builder()
+                    .id(photo.getId())
+                    .eventId(photo.getEvent().getId())
+                    .storageStatus(Photo.StorageStatus.PENDING_STORAGE.name())
+                    .representativePhotoId(photo.getRepresentativePhotoId())
+                    .uploadedBy(photo.getUploadedBy().getName())
+                    .indexed(photo.getIndexed())
+                    .createdAt(photo.getCreatedAt())
+                    .build();
+        }
+        // A missing copy falls back to the next larger one, and finally to the original
+        String full = photo.getFullFileId() != null ? photo.getFullFileId() : photo.getDriveFileId();
+        String medium = photo.getMediumFileId() != null ? photo.getMediumFileId() : full;
+        String small = photo.getSmallFileId() != null ? photo.getSmallFileId() : medium;
         return PhotoResponse.builder()
                 .id(photo.getId())
                 .eventId(photo.getEvent().getId())
-                .downloadUrl(googleDriveService.getTemporaryDownloadLink(photo.getDriveFileId()))
+                .downloadUrl(downloadUrl(photo.getDriveFileId()))
+                .smallUrl(downloadUrl(small))
+                .mediumUrl(downloadUrl(medium))
+                .fullUrl(downloadUrl(full))
+                .storageStatus(Photo.StorageStatus.STORED.name())
+                .representativePhotoId(photo.getRepresentativePhotoId())
                 .uploadedBy(photo.getUploadedBy().getName())
                 .indexed(photo.getIndexed())
                 .createdAt(photo.getCreatedAt())
                 .build();
     }
+
+    // Every backend's files are served through the download endpoint and its disk cache
+    private static String downloadUrl(String fileId) {
+        return "/photo/download/" + fileId;
+    }
 }
@@ -0,0 +1,18 @@
+package com.eventphoto.service;
+
+/**
+ * The event, or the node as a whole, already has as many live match subscriptions as it keeps in memory.
+ */
+public class SubscriptionCapacityException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public SubscriptionCapacityException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.eventphoto.service;
+
+/**
+ * The upload spool's in-flight byte budget stayed full for longer than an upload may wait.
+ */
+public class UploadCapacityException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UploadCapacityException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
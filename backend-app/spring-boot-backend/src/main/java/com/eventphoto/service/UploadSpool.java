@@ -0,0 +1,241 @@
+package com.eventphoto.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Temp files holding uploads while they are stored. Each upload is written to disk once; the Drive upload, the copy
+ * generation and face indexing all read that file, and it is deleted when the last of them releases it.
+ *
+ * <p>The bytes of live spool files count against {@code upload-spool.max-bytes}. New uploads wait while the budget
+ * is used up and fail with {@link UploadCapacityException} after {@code upload-spool.max-wait-ms}, so an upload storm
+ * slows clients down instead of filling memory and disk.
+ */
+@Component
+@Slf4j
+public class UploadSpool {
+
+    private final Object budget = new Object();
+    private long inFlightBytes;
+    private Path dir;
+
+    @Value("${upload-spool.dir:${java.io.tmpdir}/eventphoto-spool}")
+    private String spoolDir;
+
+    @Value("${upload-spool.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${upload-spool.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    @PostConstruct
+    void start() throws IOException {
+        dir = Paths.get(spoolDir);
+        Files.createDirectories(dir);
+        // Nothing survives a restart: staged uploads live elsewhere and indexing falls back to Drive
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "*.upload")) {
+            for (Path path : leftovers) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Moves a multipart upload into the spool; Tomcat's own temp file is moved rather than copied where possible.
+     */
+    public Spooled spool(MultipartFile file) throws IOException {
+        reserve(file.getSize());
+        Path path = newPath();
+        try {
+            // An absolute file lets the servlet container rename its temp file instead of copying it
+            file.transferTo(path.toAbsolutePath().toFile());
+        } catch (IOException | RuntimeException e) {
+            unreserve(file.getSize());
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new Spooled(path, file.getOriginalFilename(), file.getContentType(), file.getSize());
+    }
+
+    /**
+     * Spools a stream, e.g. a ZIP entry, of at most {@code maxSize} bytes.
+     *
+     * @return null when the stream is longer than {@code maxSize}
+     */
+    public Spooled spool(InputStream in, long maxSize, String name, String contentType) throws IOException {
+        Path path = newPath();
+        long size;
+        try (OutputStream out = Files.newOutputStream(path)) {
+            size = in.transferTo(new LimitedOutputStream(out, maxSize));
+        } catch (LimitedOutputStream.LimitExceeded e) {
+            Files.deleteIfExists(path);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        try {
+            // Reserved after writing, as the size is only known now; reading the next entry still waits
+            reserve(size);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new Spooled(path, name, contentType, size);
+    }
+
+    /**
+     * Spools a file that stays where it is, such as a staged upload, linking it into the spool when possible.
+     */
+    public Spooled spool(Path file, String name, String contentType) throws IOException {
+        long size = Files.size(file);
+        reserve(size);
+        Path path = newPath();
+        try {
+            try {
+                Files.createLink(path, file);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(file, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            unreserve(size);
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new Spooled(path, name, contentType, size);
+    }
+
+    private Path newPath() {
+        return dir.resolve(UUID.randomUUID() + ".upload");
+    }
+
+    private void reserve(long bytes) {
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        synchronized (budget) {
+            // A file larger than the whole budget still goes through on its own
+            while (inFlightBytes > 0 && inFlightBytes + bytes > maxBytes) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new UploadCapacityException("Too many uploads in progress, please retry",
+                            TimeUnit.MILLISECONDS.toSeconds(maxWaitMs));
+                }
+                try {
+                    budget.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Upload interrupted");
+                }
+            }
+            inFlightBytes += bytes;
+        }
+    }
+
+    private void unreserve(long bytes) {
+        synchronized (budget) {
+            inFlightBytes -= bytes;
+            budget.notifyAll();
+        }
+    }
+
+    /**
+     * One spooled upload. It starts with one reference held by whoever spooled it; every other user takes its own
+     * with {@link #retain()} and gives it back with {@link #release()}.
+     */
+    public final class Spooled {
+
+        private final Path path;
+        private final String name;
+        private final String contentType;
+        private final long size;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Spooled(Path path, String name, String contentType, long size) {
+            this.path = path;
+            this.name = name;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public byte[] readAllBytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+
+        public Spooled retain() {
+            if (references.getAndUpdate(count -> count > 0 ? count + 1 : count) <= 0) {
+                throw new IllegalStateException("Spool file already released");
+            }
+            return this;
+        }
+
+        public void release() {
+            if (references.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete spool file {}: {}", path, e.getMessage());
+            }
+            unreserve(size);
+        }
+    }
+
+    private static final class LimitedOutputStream extends OutputStream {
+
+        private static final class LimitExceeded extends IOException {
+        }
+
+        private final OutputStream out;
+        private long remaining;
+
+        LimitedOutputStream(OutputStream out, long limit) {
+            this.out = out;
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            remaining -= len;
+            if (remaining < 0) {
+                throw new LimitExceeded();
+            }
+            out.write(b, off, len);
+        }
+    }
+}
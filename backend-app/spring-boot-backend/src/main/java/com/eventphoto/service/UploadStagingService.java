@@ -0,0 +1,237 @@
+package com.eventphoto.service;
+
+import com.eventphoto.dto.PhotoResponse;
+import com.eventphoto.entity.Event;
+import com.eventphoto.entity.Photo;
+import com.eventphoto.entity.User;
+import com.eventphoto.repository.EventRepository;
+import com.eventphoto.repository.PhotoRepository;
+import com.eventphoto.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind uploads: the photo is written to {@code upload-staging.dir} and inserted as PENDING_STORAGE, and the
+ * request returns without waiting for Drive. Drainer threads then create the Drive folder if needed, upload the
+ * original and its copies, store the Drive ids and queue face indexing with the staged file. Failed pushes are
+ * retried with backoff until they succeed, and staged photos left by a restart are picked up on startup.
+ *
+ * <p>Staged files live on the node that accepted the upload, so only that node can push them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadStagingService {
+
+    // Not a valid Drive file id, so a pending photo is never looked up in Drive or the photo cache
+    private static final String PLACEHOLDER_PREFIX = "pending:";
+
+    private final PhotoService photoService;
+    private final PhotoRepository photoRepository;
+    private final EventRepository eventRepository;
+    private final UserRepository userRepository;
+    private final UploadSpool uploadSpool;
+    private final PhotoDedupService photoDedupService;
+
+    @Value("${upload-staging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${upload-staging.dir:upload-staging}")
+    private String stagingDir;
+
+    @Value("${upload-staging.workers:2}")
+    private int workers;
+
+    @Value("${upload-staging.retry-seconds:30}")
+    private long retrySeconds;
+
+    @Value("${upload-staging.max-retry-seconds:900}")
+    private long maxRetrySeconds;
+
+    private Path dir;
+    private ScheduledExecutorService drainer;
+
+    @PostConstruct
+    void start() throws IOException {
+        dir = Paths.get(stagingDir);
+        Files.createDirectories(dir);
+        AtomicInteger count = new AtomicInteger();
+        drainer = Executors.newScheduledThreadPool(workers, r -> {
+            Thread t = new Thread(r, "upload-drainer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Runs even when staging is switched off, so photos staged before that still reach Drive
+        drainer.execute(this::recover);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stages an upload and returns its PENDING_STORAGE photo. Only the event and photographer are looked up; the
+     * Drive folder is checked when the photo is pushed.
+     */
+    public PhotoResponse stage(Integer eventId, Integer photographerId, MultipartFile file) throws IOException {
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new RuntimeException("Event not found"));
+
+        User photographer = userRepository.findById(photographerId)
+                .orElseThrow(() -> new RuntimeException("Photographer not found"));
+
+        String id = UUID.randomUUID().toString();
+        String stagedFile = id + "_" + safeName(file.getOriginalFilename());
+        Path path = dir.resolve(stagedFile);
+        file.transferTo(path.toAbsolutePath().toFile());
+
+        String contentHash;
+        Photo existing;
+        try {
+            contentHash = photoDedupService.contentHash(path);
+            existing = photoDedupService.findDuplicate(eventId, contentHash);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        if (existing != null) {
+            // Nothing to push; the event already has this file
+            Files.deleteIfExists(path);
+            PhotoResponse response = photoService.mapToResponse(existing);
+            response.setDuplicate(true);
+            return response;
+        }
+
+        Photo photo = new Photo();
+        photo.setEvent(event);
+        photo.setUploadedBy(photographer);
+        photo.setIndexed(false);
+        photo.setDriveFileId(PLACEHOLDER_PREFIX + id);
+        photo.setStorageStatus(Photo.StorageStatus.PENDING_STORAGE);
+        photo.setStagedFile(stagedFile);
+        photo.setContentHash(contentHash);
+        photo.setCapturedAt(photoDedupService.captureTime(path));
+        Photo savedPhoto;
+        try {
+            savedPhoto = photoRepository.save(photo);
+        } catch (DataIntegrityViolationException e) {
+            // The same file was staged or uploaded concurrently and got in first
+            Files.deleteIfExists(path);
+            existing = photoDedupService.findDuplicate(eventId, contentHash);
+            if (existing == null) {
+                throw e;
+            }
+            PhotoResponse response = photoService.mapToResponse(existing);
+            response.setDuplicate(true);
+            return response;
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        schedule(savedPhoto.getId(), stagedFile, 0);
+        return photoService.mapToResponse(savedPhoto);
+    }
+
+    private void recover() {
+        try {
+            Set<String> pending = photoRepository.findByStorageStatus(Photo.StorageStatus.PENDING_STORAGE).stream()
+                    .filter(photo -> photo.getStagedFile() != null
+                            && Files.isRegularFile(dir.resolve(photo.getStagedFile())))
+                    .peek(photo -> schedule(photo.getId(), photo.getStagedFile(), 0))
+                    .map(Photo::getStagedFile)
+                    .collect(Collectors.toSet());
+            if (!pending.isEmpty()) {
+                log.info("Resuming {} staged uploads", pending.size());
+            }
+            // Files of photos deleted while they were staged
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path path : files) {
+                    if (!pending.contains(path.getFileName().toString())) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume staged uploads: {}", e.getMessage());
+        }
+    }
+
+    private void schedule(Integer photoId, String stagedFile, int attempt) {
+        long delay = 0;
+        if (attempt > 0) {
+            // Exponential backoff with jitter, so a Drive outage is not retried in lockstep
+            delay = TimeUnit.SECONDS.toMillis(Math.min(maxRetrySeconds, retrySeconds << Math.min(attempt - 1, 20)));
+            delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        }
+        drainer.schedule(() -> push(photoId, stagedFile, attempt), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void push(Integer photoId, String stagedFile, int attempt) {
+        Path path = dir.resolve(stagedFile);
+        try {
+            Photo photo = photoRepository.findById(photoId).orElse(null);
+            if (photo == null || photo.getStorageStatus() != Photo.StorageStatus.PENDING_STORAGE) {
+                // Deleted with its event while it was staged
+                Files.deleteIfExists(path);
+                return;
+            }
+            String name = stagedFile.substring(stagedFile.indexOf('_') + 1);
+            String contentType = MediaTypeFactory.getMediaType(name).orElse(MediaType.IMAGE_JPEG).toString();
+            long start = System.currentTimeMillis();
+            UploadSpool.Spooled spool = uploadSpool.spool(path, name, contentType);
+            try {
+                if (photoService.storeStagedPhoto(photo, spool)) {
+                    log.debug("Pushed staged photo {} to Drive in {} ms", photoId, System.currentTimeMillis() - start);
+                }
+            } finally {
+                spool.release();
+            }
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            log.warn("Pushing staged photo {} to Drive failed (attempt {}): {}", photoId, attempt + 1,
+                    e.getMessage());
+            if (!drainer.isShutdown()) {
+                schedule(photoId, stagedFile, attempt + 1);
+            }
+        }
+    }
+
+    // Keeps the original name for Drive without letting it leave the staging directory
+    private static String safeName(String originalName) {
+        if (originalName == null || originalName.isBlank()) {
+            return "photo.jpg";
+        }
+        int separator = Math.max(originalName.lastIndexOf('/'), originalName.lastIndexOf('\\'));
+        String name = originalName.substring(separator + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        return name.length() > 100 ? name.substring(name.length() - 100) : name;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Staged files stay on disk and are pushed after the restart
+        drainer.shutdownNow();
+    }
+}
@@ -0,0 +1,154 @@
+package com.eventphoto.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Photos on a local or NFS-mounted file system under {@code photo-storage.local.dir}: one directory per event, one
+ * file per photo. Files are written under a temporary name and renamed into place, so other nodes sharing the mount
+ * never read a partial file.
+ */
+@Service
+@Profile("!fake-drive")
+@ConditionalOnProperty(name = "photo-storage.type", havingValue = "local")
+@Slf4j
+public class FileSystemPhotoStorage implements PhotoStorage {
+
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9-]+(_[A-Za-z0-9-]+)?");
+
+    private final Path root;
+
+    public FileSystemPhotoStorage(@Value("${photo-storage.local.dir:photo-storage}") String dir) {
+        this.root = Paths.get(dir);
+        log.info("Storing photos in {}", root.toAbsolutePath());
+    }
+
+    @Override
+    public String createContainer(String eventName, Integer eventId) throws IOException {
+        String containerId = "event-" + eventId + "-" + UUID.randomUUID().toString().substring(0, 8);
+        Files.createDirectories(root.resolve(containerId));
+        return containerId;
+    }
+
+    @Override
+    public String put(String containerId, String name, String contentType, Path content) throws IOException {
+        String fileId = newFileId(containerId);
+        Path temp = tempFile(containerId, fileId);
+        try {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, locate(fileId), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return fileId;
+    }
+
+    @Override
+    public String put(String containerId, String name, String contentType, byte[] content) throws IOException {
+        String fileId = newFileId(containerId);
+        Path temp = tempFile(containerId, fileId);
+        try {
+            Files.write(temp, content);
+            Files.move(temp, locate(fileId), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return fileId;
+    }
+
+    @Override
+    public InputStream open(String fileId) throws IOException {
+        return Files.newInputStream(existing(fileId));
+    }
+
+    @Override
+    public InputStream openRange(String fileId, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(existing(fileId), StandardOpenOption.READ);
+        channel.position(offset);
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = super.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public void delete(String fileId) throws IOException {
+        Files.deleteIfExists(locate(fileId));
+    }
+
+    @Override
+    public void deleteContainer(String containerId) throws IOException {
+        if (containerId != null) {
+            FileSystemUtils.deleteRecursively(container(containerId));
+        }
+    }
+
+    // File ids are prefixed with their container id, so a file is found without a lookup
+    private static String newFileId(String containerId) {
+        return containerId + "_" + UUID.randomUUID();
+    }
+
+    private Path tempFile(String containerId, String fileId) throws IOException {
+        Path container = container(containerId);
+        Files.createDirectories(container);
+        return container.resolve("." + fileId + ".tmp");
+    }
+
+    private Path container(String containerId) throws IOException {
+        if (containerId.indexOf('_') >= 0 || !ID.matcher(containerId).matches()) {
+            throw new FileNotFoundException("Invalid container id " + containerId);
+        }
+        return root.resolve(containerId);
+    }
+
+    private Path locate(String fileId) throws IOException {
+        int separator = fileId.indexOf('_');
+        if (separator <= 0 || !ID.matcher(fileId).matches()) {
+            throw new FileNotFoundException("Invalid file id " + fileId);
+        }
+        return root.resolve(fileId.substring(0, separator)).resolve(fileId);
+    }
+
+    private Path existing(String fileId) throws IOException {
+        Path path = locate(fileId);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("No stored file " + fileId);
+        }
+        return path;
+    }
+}
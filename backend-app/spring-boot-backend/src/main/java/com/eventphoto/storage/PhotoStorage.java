@@ -0,0 +1,64 @@
+package com.eventphoto.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Where photo files live. Each event gets a container (a Drive folder, a directory or a key prefix), and every file
+ * is addressed by the id {@code put} returned. Ids are stored in {@code photos.drive_file_id} and
+ * {@code events.drive_folder_id} whatever the backend, and must match {@code [A-Za-z0-9_-]+} so they can appear in
+ * download URLs and cache file names.
+ *
+ * <p>The backend is chosen with {@code photo-storage.type}: {@code drive} (default), {@code local} or {@code s3}.
+ */
+public interface PhotoStorage {
+
+    /**
+     * Creates the container for an event's photos and returns its id.
+     */
+    String createContainer(String eventName, Integer eventId) throws IOException;
+
+    /**
+     * Stores a file, read from disk, in a container and returns its id. {@code name} is only a display name.
+     */
+    String put(String containerId, String name, String contentType, Path content) throws IOException;
+
+    /**
+     * Stores generated content, such as a photo's copies, in a container and returns its id.
+     */
+    String put(String containerId, String name, String contentType, byte[] content) throws IOException;
+
+    /**
+     * Opens a file for reading; the caller closes the stream.
+     */
+    InputStream open(String fileId) throws IOException;
+
+    /**
+     * Opens {@code length} bytes of a file starting at {@code offset}; fewer when the file ends before.
+     */
+    InputStream openRange(String fileId, long offset, long length) throws IOException;
+
+    void delete(String fileId) throws IOException;
+
+    /**
+     * Deletes a container with every file in it.
+     */
+    void deleteContainer(String containerId) throws IOException;
+
+    /**
+     * Streams a file into {@code out} without buffering it in memory.
+     */
+    default void downloadTo(String fileId, OutputStream out) throws IOException {
+        try (InputStream in = open(fileId)) {
+            in.transferTo(out);
+        }
+    }
+
+    default byte[] download(String fileId) throws IOException {
+        try (InputStream in = open(fileId)) {
+            return in.readAllBytes();
+        }
+    }
+}
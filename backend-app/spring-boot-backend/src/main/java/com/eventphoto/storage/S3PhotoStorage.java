@@ -0,0 +1,227 @@
+package com.eventphoto.storage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Photos in an S3-compatible bucket ({@code photo-storage.s3.*}), such as AWS S3 or a MinIO instance next to the
+ * backend. Requests use path-style URLs and Signature Version 4 over the JDK HTTP client, so no SDK is needed. An
+ * event's container is a key prefix and a file id {@code <container>_<uuid>} is stored under
+ * {@code <container>/<fileId>}.
+ */
+@Service
+@Profile("!fake-drive")
+@ConditionalOnProperty(name = "photo-storage.type", havingValue = "s3")
+@Slf4j
+public class S3PhotoStorage implements PhotoStorage {
+
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9-]+(_[A-Za-z0-9-]+)?");
+
+    @Value("${photo-storage.s3.endpoint}")
+    private String endpoint;
+
+    @Value("${photo-storage.s3.bucket}")
+    private String bucket;
+
+    @Value("${photo-storage.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${photo-storage.s3.access-key}")
+    private String accessKey;
+
+    @Value("${photo-storage.s3.secret-key}")
+    private String secretKey;
+
+    @Value("${photo-storage.s3.request-timeout-ms:60000}")
+    private long requestTimeoutMs;
+
+    private HttpClient httpClient;
+    private S3Signer signer;
+
+    @PostConstruct
+    void start() {
+        // One shared client, so connections to the store are kept alive and reused
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        signer = new S3Signer(accessKey, secretKey, region);
+        log.info("Storing photos in bucket {} at {}", bucket, endpoint);
+    }
+
+    @Override
+    public String createContainer(String eventName, Integer eventId) {
+        // Prefixes need no creating; the id only has to be unique
+        return "event-" + eventId + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public String put(String containerId, String name, String contentType, Path content) throws IOException {
+        String fileId = newFileId(containerId);
+        // The file is streamed as it is sent, so its hash is not part of the signature
+        send("PUT", key(fileId), null, contentType, HttpRequest.BodyPublishers.ofFile(content),
+                S3Signer.UNSIGNED_PAYLOAD, HttpResponse.BodyHandlers.discarding());
+        return fileId;
+    }
+
+    @Override
+    public String put(String containerId, String name, String contentType, byte[] content) throws IOException {
+        String fileId = newFileId(containerId);
+        send("PUT", key(fileId), null, contentType, HttpRequest.BodyPublishers.ofByteArray(content),
+                S3Signer.UNSIGNED_PAYLOAD, HttpResponse.BodyHandlers.discarding());
+        return fileId;
+    }
+
+    @Override
+    public InputStream open(String fileId) throws IOException {
+        return get(fileId, null);
+    }
+
+    @Override
+    public InputStream openRange(String fileId, long offset, long length) throws IOException {
+        return get(fileId, "bytes=" + offset + "-" + (offset + length - 1));
+    }
+
+    @Override
+    public void delete(String fileId) throws IOException {
+        send("DELETE", key(fileId), null, null, HttpRequest.BodyPublishers.noBody(), S3Signer.EMPTY_PAYLOAD,
+                HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * Deletes every object under the container's prefix, one listing page at a time.
+     */
+    @Override
+    public void deleteContainer(String containerId) throws IOException {
+        if (containerId == null) {
+            return;
+        }
+        if (containerId.indexOf('_') >= 0 || !ID.matcher(containerId).matches()) {
+            throw new FileNotFoundException("Invalid container id " + containerId);
+        }
+        String continuation = null;
+        do {
+            String query = "list-type=2&prefix=" + S3Signer.encode(containerId + "/")
+                    + (continuation == null ? "" : "&continuation-token=" + S3Signer.encode(continuation));
+            Document listing;
+            try (InputStream body = send("GET", "", query, null, HttpRequest.BodyPublishers.noBody(),
+                    S3Signer.EMPTY_PAYLOAD, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+                listing = parse(body);
+            }
+            for (String key : texts(listing, "Key")) {
+                send("DELETE", key, null, null, HttpRequest.BodyPublishers.noBody(), S3Signer.EMPTY_PAYLOAD,
+                        HttpResponse.BodyHandlers.discarding());
+            }
+            List<String> next = texts(listing, "NextContinuationToken");
+            continuation = List.of("true").equals(texts(listing, "IsTruncated")) && !next.isEmpty()
+                    ? next.get(0) : null;
+        } while (continuation != null);
+    }
+
+    private InputStream get(String fileId, String range) throws IOException {
+        return send("GET", key(fileId), null, null, HttpRequest.BodyPublishers.noBody(), S3Signer.EMPTY_PAYLOAD,
+                HttpResponse.BodyHandlers.ofInputStream(), range == null ? Map.of() : Map.of("range", range)).body();
+    }
+
+    private <T> HttpResponse<T> send(String method, String key, String query, String contentType,
+                                     HttpRequest.BodyPublisher body, String payloadHash,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException {
+        return send(method, key, query, contentType, body, payloadHash, handler, Map.of());
+    }
+
+    private <T> HttpResponse<T> send(String method, String key, String query, String contentType,
+                                     HttpRequest.BodyPublisher body, String payloadHash,
+                                     HttpResponse.BodyHandler<T> handler, Map<String, String> extraHeaders)
+            throws IOException {
+        StringBuilder path = new StringBuilder("/").append(S3Signer.encode(bucket));
+        if (!key.isEmpty()) {
+            for (String segment : key.split("/")) {
+                path.append('/').append(S3Signer.encode(segment));
+            }
+        }
+        URI uri = URI.create(endpoint.replaceAll("/+$", "") + path + (query == null ? "" : "?" + query));
+
+        Map<String, String> headers = new LinkedHashMap<>(extraHeaders);
+        if (contentType != null) {
+            headers.put("content-type", contentType);
+        }
+        String authorization = signer.sign(method, uri, headers, payloadHash, ZonedDateTime.now());
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .method(method, body)
+                .header("Authorization", authorization);
+        headers.forEach(request::header);
+
+        HttpResponse<T> response;
+        try {
+            response = httpClient.send(request.build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S3 request interrupted");
+        }
+        if (response.statusCode() / 100 != 2) {
+            if (response.body() instanceof InputStream error) {
+                error.close();
+            }
+            String message = "S3 " + method + " " + key + " failed with HTTP " + response.statusCode();
+            throw response.statusCode() == 404 ? new FileNotFoundException(message) : new IOException(message);
+        }
+        return response;
+    }
+
+    private static String newFileId(String containerId) {
+        return containerId + "_" + UUID.randomUUID();
+    }
+
+    private static String key(String fileId) throws IOException {
+        int separator = fileId.indexOf('_');
+        if (separator <= 0 || !ID.matcher(fileId).matches()) {
+            throw new FileNotFoundException("Invalid file id " + fileId);
+        }
+        return fileId.substring(0, separator) + "/" + fileId;
+    }
+
+    private static Document parse(InputStream body) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(body);
+        } catch (Exception e) {
+            throw new IOException("Unreadable S3 listing: " + e.getMessage());
+        }
+    }
+
+    private static List<String> texts(Document document, String element) {
+        NodeList nodes = document.getElementsByTagName(element);
+        List<String> texts = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            texts.add(nodes.item(i).getTextContent().trim());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,103 @@
+package com.eventphoto.controller;
+
+import com.eventphoto.service.PhotoFileCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional and partial GETs on the download endpoint, as browsers and the app's image cache send them.
+ */
+class PhotoControllerTest {
+
+    private static final String FILE_ID = "1AbC_d-9";
+    private static final String ETAG = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private PhotoFileCache photoFileCache;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path path = Files.writeString(dir.resolve(FILE_ID + "." + ETAG), "0123456789", StandardCharsets.US_ASCII);
+        photoFileCache = mock(PhotoFileCache.class);
+        when(photoFileCache.get(FILE_ID))
+                .thenReturn(new PhotoFileCache.CachedFile(FILE_ID, path, 10, ETAG, LAST_MODIFIED));
+        mvc = MockMvcBuilders.standaloneSetup(new PhotoController(photoFileCache)).build();
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + ETAG + "\""))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "10"))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void matchingETagIsNotModified() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID).header(HttpHeaders.IF_NONE_MATCH, "\"" + ETAG + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + ETAG + "\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void staleETagGetsTheFile() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID).header(HttpHeaders.IF_NONE_MATCH, "\"older\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void rangeIsServedAsPartialContent() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID).header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "4"))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void suffixRangeResumesAtTheEnd() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID).header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        mvc.perform(get("/photo/download/" + FILE_ID).header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void invalidFileIdIsNotFound() throws Exception {
+        mvc.perform(get("/photo/download/not.a.drive.id"))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(photoFileCache);
+    }
+}
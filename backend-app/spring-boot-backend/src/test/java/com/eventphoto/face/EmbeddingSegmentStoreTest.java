@@ -0,0 +1,166 @@
+package com.eventphoto.face;
+
+import com.eventphoto.fake.SyntheticFaces;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingSegmentStoreTest {
+
+    private static final int EVENT_ID = 7;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadReturnsTheLatestBatchOfEachPhoto() {
+        EmbeddingSegmentStore store = new EmbeddingSegmentStore(dir.toString());
+        float[] alice = SyntheticFaces.embedding(1, 1);
+        float[] bob = SyntheticFaces.embedding(2, 1);
+        float[] carol = SyntheticFaces.embedding(3, 1);
+        float[] dave = SyntheticFaces.embedding(4, 1);
+
+        assertEquals(0, store.append(EVENT_ID, 10, List.of(alice, bob)));
+        assertEquals(2, store.append(EVENT_ID, 11, List.of(carol)));
+        Map<Integer, List<float[]>> bulk = new LinkedHashMap<>();
+        bulk.put(12, List.of(dave));
+        bulk.put(13, List.of());
+        store.appendAll(EVENT_ID, bulk);
+        // Re-indexing photo 10 drops bob; photo 11 no longer has faces
+        assertEquals(5, store.append(EVENT_ID, 10, List.of(alice)));
+        assertEquals(6, store.append(EVENT_ID, 11, List.of()));
+
+        EventFaceIndex index = store.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION);
+
+        assertEquals(2, index.size());
+        assertEquals(List.of(new FaceMatch(10, 0, 0f)), index.exactMatch(alice, 0.01f));
+        assertEquals(List.of(new FaceMatch(12, 0, 0f)), index.exactMatch(dave, 0.01f));
+        assertTrue(index.exactMatch(bob, 0.01f).isEmpty());
+        assertTrue(index.exactMatch(carol, 0.01f).isEmpty());
+    }
+
+    @Test
+    void appendDropsATornRecord() throws Exception {
+        EmbeddingSegmentStore store = new EmbeddingSegmentStore(dir.toString());
+        float[] alice = SyntheticFaces.embedding(1, 1);
+        float[] bob = SyntheticFaces.embedding(2, 1);
+        store.append(EVENT_ID, 10, List.of(alice));
+        Files.write(dir.resolve("event_" + EVENT_ID + ".seg"), new byte[100], StandardOpenOption.APPEND);
+
+        assertEquals(1, store.append(EVENT_ID, 11, List.of(bob)));
+
+        EventFaceIndex index = store.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION);
+        assertEquals(2, index.size());
+        assertEquals(List.of(new FaceMatch(11, 0, 0f)), index.exactMatch(bob, 0.01f));
+    }
+
+    @Test
+    void deleteRemovesTheSegment() {
+        EmbeddingSegmentStore store = new EmbeddingSegmentStore(dir.toString());
+        store.append(EVENT_ID, 10, List.of(SyntheticFaces.embedding(1, 1)));
+        assertTrue(store.exists(EVENT_ID));
+
+        store.delete(EVENT_ID);
+
+        assertFalse(store.exists(EVENT_ID));
+        assertEquals(0, store.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION).size());
+    }
+
+    @Test
+    void replaceAllSupersedesEveryEarlierRecord() {
+        EmbeddingSegmentStore store = new EmbeddingSegmentStore(dir.toString());
+        float[] alice = SyntheticFaces.embedding(1, 1);
+        float[] bob = SyntheticFaces.embedding(2, 1);
+        store.append(EVENT_ID, 10, List.of(alice));
+
+        store.replaceAll(EVENT_ID, () -> Map.of(11, List.of(bob)));
+        assertEquals(1, store.append(EVENT_ID, 12, List.of(alice)));
+
+        EventFaceIndex index = store.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION);
+        assertEquals(2, index.size());
+        assertEquals(List.of(new FaceMatch(12, 0, 0f)), index.exactMatch(alice, 0.01f));
+        assertEquals(List.of(new FaceMatch(11, 0, 0f)), index.exactMatch(bob, 0.01f));
+
+        store.replaceAll(EVENT_ID, Map::of);
+        assertFalse(store.exists(EVENT_ID));
+    }
+
+    @Test
+    void appendsRacingDeletesNeverOverlap() throws Exception {
+        EmbeddingSegmentStore store = new EmbeddingSegmentStore(dir.toString());
+        int writers = 4;
+        int photosPerWriter = 300;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int firstPhoto = w * photosPerWriter;
+                running.add(pool.submit(() -> {
+                    start.await();
+                    for (int photoId = firstPhoto; photoId < firstPhoto + photosPerWriter; photoId++) {
+                        store.append(EVENT_ID, photoId, batch(photoId));
+                    }
+                    return null;
+                }));
+            }
+            running.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < photosPerWriter; i++) {
+                    store.delete(EVENT_ID);
+                    Thread.yield();
+                }
+                return null;
+            }));
+            start.countDown();
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        store.append(EVENT_ID, writers * photosPerWriter, batch(writers * photosPerWriter));
+
+        // Two writers on one segment at once would start batches at the same record and overwrite each other
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("event_" + EVENT_ID + ".seg")))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0, (segment.limit() - EmbeddingSegmentStore.HEADER_SIZE) % EmbeddingSegmentStore.RECORD_SIZE);
+        int position = EmbeddingSegmentStore.HEADER_SIZE;
+        while (position < segment.limit()) {
+            int photoId = segment.getInt(position);
+            int faces = batch(photoId).size();
+            for (int face = 0; face < faces; face++) {
+                assertEquals(photoId, segment.getInt(position));
+                assertEquals(face, segment.getInt(position + 4));
+                assertEquals(SyntheticFaces.embedding(photoId, face)[0], segment.getFloat(position + 8));
+                position += EmbeddingSegmentStore.RECORD_SIZE;
+            }
+        }
+    }
+
+    // One to three faces, so an overwritten batch leaves a run of face numbers that does not start at 0
+    private static List<float[]> batch(int photoId) {
+        List<float[]> faces = new ArrayList<>();
+        for (int face = 0; face <= photoId % 3; face++) {
+            faces.add(SyntheticFaces.embedding(photoId, face));
+        }
+        return faces;
+    }
+}
@@ -0,0 +1,55 @@
+package com.eventphoto.face;
+
+import com.eventphoto.fake.SyntheticFaces;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HNSW search against the exact scan on a {@link SyntheticEvent}.
+ */
+class EventFaceIndexRecallTest {
+
+    private static final EventFaceIndex.HnswSettings HNSW = new EventFaceIndex.HnswSettings(16, 100, 64, false);
+
+    @Test
+    void hnswFindsWhatTheScanFinds() {
+        EventFaceIndex index = new EventFaceIndex();
+        SyntheticEvent.photos().forEach((photoId, encodings) -> index.putPhoto(photoId, encodings, 0));
+        index.attachGraph(HNSW);
+        index.catchUpGraph();
+
+        assertTrue(index.hasGraph());
+        SyntheticEvent.assertRecall(index, index);
+    }
+
+    @Test
+    void photosAddedAfterTheLastCatchUpAreStillFound() {
+        EventFaceIndex index = new EventFaceIndex();
+        SyntheticEvent.photos().forEach((photoId, encodings) -> index.putPhoto(photoId, encodings, 0));
+        index.attachGraph(HNSW);
+        index.catchUpGraph();
+
+        float[] newcomer = SyntheticFaces.embedding(SyntheticEvent.PEOPLE + 1, 1);
+        index.putPhoto(100_000, List.of(newcomer), 0);
+
+        assertEquals(100_000, index.match(newcomer, 0.01f).get(0).photoId());
+    }
+
+    @Test
+    void catchUpIsClaimedOnceUntilItRuns() {
+        EventFaceIndex index = new EventFaceIndex();
+        assertFalse(index.claimCatchUp(), "no graph to catch up");
+
+        index.attachGraph(HNSW);
+        assertTrue(index.claimCatchUp());
+        assertFalse(index.claimCatchUp());
+
+        index.catchUpGraph();
+        assertTrue(index.claimCatchUp());
+    }
+}
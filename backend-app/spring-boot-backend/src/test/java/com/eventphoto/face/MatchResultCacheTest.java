@@ -0,0 +1,91 @@
+package com.eventphoto.face;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MatchResultCacheTest {
+
+    private static final List<FaceMatch> MATCHES = List.of(new FaceMatch(7, 0, 0.3f));
+
+    private MatchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = cache(10);
+    }
+
+    @Test
+    void reEncodedSelfieIsFoundByItsEmbedding() {
+        float[] selfie = encoding(0.1f);
+        cache.put(1, "a", selfie, 0.5f, MATCHES, cache.version(1));
+
+        float[] reEncoded = selfie.clone();
+        reEncoded[0] += 0.05f;
+        assertEquals(MATCHES, cache.getNear(1, "b", reEncoded));
+        // The new hash is remembered, so the next request for it skips the embedding
+        assertEquals(MATCHES, cache.get(1, "b"));
+    }
+
+    @Test
+    void differentSelfieOrEventIsNotANearDuplicate() {
+        float[] selfie = encoding(0.1f);
+        cache.put(1, "a", selfie, 0.5f, MATCHES, cache.version(1));
+
+        float[] other = selfie.clone();
+        other[0] += 0.07f;
+        assertNull(cache.getNear(1, "b", other));
+        assertNull(cache.getNear(2, "b", selfie));
+        assertNull(cache.get(1, "b"));
+    }
+
+    @Test
+    void selfieWithoutFaceIsNeverANearDuplicate() {
+        cache.put(1, "a", null, 0.5f, List.of(), cache.version(1));
+
+        assertEquals(List.of(), cache.get(1, "a"));
+        assertNull(cache.getNear(1, "b", encoding(0.1f)));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        MatchResultCache small = cache(2);
+        small.put(1, "a", encoding(0.1f), 0.5f, MATCHES, 0);
+        small.put(1, "b", encoding(0.2f), 0.5f, MATCHES, 0);
+        small.get(1, "a");
+        small.put(1, "c", encoding(0.3f), 0.5f, MATCHES, 0);
+
+        assertEquals(MATCHES, small.get(1, "a"));
+        assertNull(small.get(1, "b"));
+        assertEquals(MATCHES, small.get(1, "c"));
+        // Eviction also drops the entry from the event's near-duplicate candidates
+        assertNull(small.getNear(1, "d", encoding(0.2f)));
+    }
+
+    @Test
+    void resultMatchedBeforeAnIndexUpdateIsNotCached() {
+        long version = cache.version(1);
+        cache.photoIndexed(1, 8, List.of(encoding(0.9f)));
+        cache.put(1, "a", encoding(0.1f), 0.5f, MATCHES, version);
+
+        assertNull(cache.get(1, "a"));
+    }
+
+    private static MatchResultCache cache(int maxEntries) {
+        MatchResultCache cache = new MatchResultCache(maxEntries);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "nearDuplicateDistance", 0.06f);
+        return cache;
+    }
+
+    private static float[] encoding(float value) {
+        float[] encoding = new float[EventFaceIndex.DIMENSIONS];
+        encoding[0] = value;
+        return encoding;
+    }
+}
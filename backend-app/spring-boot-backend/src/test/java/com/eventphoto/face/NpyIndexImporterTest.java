@@ -0,0 +1,53 @@
+package com.eventphoto.face;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NpyIndexImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsFloat64AndFloat32Vectors() throws Exception {
+        // face_recognition encodings are float64; np.save writes them little-endian
+        Path float64 = write("photo_1_face_0.npy", "<f8", 8, buffer -> buffer.putDouble(0.25).putDouble(-1.5));
+        Path float32 = write("photo_1_face_1.npy", "<f4", 4, buffer -> buffer.putFloat(0.25f).putFloat(-1.5f));
+
+        assertArrayEquals(new float[]{0.25f, -1.5f}, NpyIndexImporter.readVector(float64));
+        assertArrayEquals(new float[]{0.25f, -1.5f}, NpyIndexImporter.readVector(float32));
+    }
+
+    @Test
+    void rejectsIntegerArrays() throws Exception {
+        Path ints = write("photo_1_face_0.npy", "<i8", 8, buffer -> buffer.putLong(1).putLong(2));
+
+        assertThrows(IOException.class, () -> NpyIndexImporter.readVector(ints));
+    }
+
+    private Path write(String name, String descr, int width, Consumer<ByteBuffer> values)
+            throws IOException {
+        String header = "{'descr': '" + descr + "', 'fortran_order': False, 'shape': (2,), }";
+        // Format 1.0: magic, version, 2-byte header length, header padded so the data starts 16-byte aligned
+        int padded = ((10 + header.length() + 1 + 15) / 16) * 16 - 10;
+        header = header + " ".repeat(padded - header.length() - 1) + "\n";
+        ByteBuffer buffer = ByteBuffer.allocate(10 + padded + 2 * width).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII)).put((byte) 1).put((byte) 0);
+        buffer.putShort((short) padded).put(header.getBytes(StandardCharsets.US_ASCII));
+        values.accept(buffer);
+        Path file = dir.resolve(name);
+        Files.write(file, buffer.array());
+        return file;
+    }
+}
@@ -0,0 +1,58 @@
+package com.eventphoto.face;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Int8 and product-quantized storage against the full-precision scan on a {@link SyntheticEvent}, re-ranked from its
+ * segment file.
+ */
+class QuantizedEventFaceIndexTest {
+
+    private static final int EVENT_ID = 1;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void int8IndexFindsWhatTheScanFinds() {
+        EmbeddingSegmentStore segments = segments();
+        EventFaceIndex exact = segments.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION);
+        EventFaceIndex int8 = segments.load(EVENT_ID, new EventFaceIndex.StorageSettings(
+                EventFaceIndex.Quantization.INT8, 0.5f, 32, 1000, 0.15f));
+
+        assertEquals(EventFaceIndex.DIMENSIONS, int8.bytesPerVector());
+        assertFalse(int8.needsProductQuantizer());
+        SyntheticEvent.assertRecall(int8, exact);
+    }
+
+    @Test
+    void productQuantizedIndexFindsWhatTheScanFinds() {
+        EmbeddingSegmentStore segments = segments();
+        EventFaceIndex exact = segments.load(EVENT_ID, EventFaceIndex.StorageSettings.FULL_PRECISION);
+        EventFaceIndex pq = segments.load(EVENT_ID, new EventFaceIndex.StorageSettings(
+                EventFaceIndex.Quantization.PQ, 0.5f, 32, 1000, 0.15f));
+
+        assertTrue(pq.needsProductQuantizer());
+        pq.trainProductQuantizer();
+        assertFalse(pq.needsProductQuantizer());
+        assertEquals(32, pq.bytesPerVector());
+        SyntheticEvent.assertRecall(pq, exact);
+
+        pq.attachGraph(new EventFaceIndex.HnswSettings(16, 100, 64, false));
+        pq.catchUpGraph();
+        SyntheticEvent.assertRecall(pq, exact);
+    }
+
+    private EmbeddingSegmentStore segments() {
+        EmbeddingSegmentStore segments = new EmbeddingSegmentStore(dir.toString());
+        segments.appendAll(EVENT_ID, SyntheticEvent.photos());
+        return segments;
+    }
+}
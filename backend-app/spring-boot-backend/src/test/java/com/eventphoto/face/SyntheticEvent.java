@@ -0,0 +1,64 @@
+package com.eventphoto.face;
+
+import com.eventphoto.fake.SyntheticFaces;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A small synthetic event for checking approximate search against the exact scan: 300 people with 10 photos each.
+ */
+final class SyntheticEvent {
+
+    static final int PEOPLE = 300;
+    static final int PHOTOS_PER_PERSON = 10;
+    private static final int QUERIES = 100;
+    private static final float TOLERANCE = 0.5f;
+    private static final double MIN_RECALL = 0.95;
+
+    private SyntheticEvent() {
+    }
+
+    static Map<Integer, List<float[]>> photos() {
+        Map<Integer, List<float[]>> event = new LinkedHashMap<>();
+        for (int person = 0; person < PEOPLE; person++) {
+            for (int photo = 0; photo < PHOTOS_PER_PERSON; photo++) {
+                event.put(person * PHOTOS_PER_PERSON + photo, List.of(SyntheticFaces.embedding(person, photo)));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Checks that {@code index} returns nothing outside the tolerance and at least 95% of the photos the exact scan
+     * of {@code exact} matches.
+     */
+    static void assertRecall(EventFaceIndex index, EventFaceIndex exact) {
+        int expected = 0;
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            // A selfie: a fresh sample of someone in the event
+            float[] query = SyntheticFaces.embedding(q * (PEOPLE / QUERIES), 1000 + q);
+            Set<Integer> truth = photoIds(exact.exactMatch(query, TOLERANCE));
+            Set<Integer> approximate = photoIds(index.match(query, TOLERANCE));
+            assertEquals(PHOTOS_PER_PERSON, truth.size());
+            assertTrue(truth.containsAll(approximate), "returned a photo outside the tolerance");
+            expected += truth.size();
+            approximate.retainAll(truth);
+            found += approximate.size();
+        }
+        double recall = (double) found / expected;
+        assertTrue(recall >= MIN_RECALL, "recall " + recall);
+    }
+
+    private static Set<Integer> photoIds(List<FaceMatch> matches) {
+        return matches.stream().map(FaceMatch::photoId).collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,335 @@
+package com.eventphoto.loadtest;
+
+import com.eventphoto.dto.CreateEventRequest;
+import com.eventphoto.dto.EventResponse;
+import com.eventphoto.dto.LoginRequest;
+import com.eventphoto.dto.LoginResponse;
+import com.eventphoto.dto.MatchPageResponse;
+import com.eventphoto.entity.IndexingJob;
+import com.eventphoto.fake.SyntheticFaces;
+import com.eventphoto.repository.FaceEmbeddingBulkRepository;
+import com.eventphoto.repository.IndexingJobRepository;
+import com.eventphoto.repository.PhotoRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load scenarios against the real controllers, with the face service and Google Drive replaced by the
+ * in-process stand-ins. Needs a MySQL database (see application-loadtest.properties) and runs only with
+ * {@code mvn test -P load-test}; results go to stdout and target/load-test-report.txt.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"fake-face", "fake-drive", "loadtest"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class EventPhotoLoadTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FaceEmbeddingBulkRepository bulkRepository;
+
+    @Autowired
+    private IndexingJobRepository indexingJobRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Value("${loadtest.upload.photos}")
+    private int uploadPhotos;
+
+    @Value("${loadtest.upload.concurrency}")
+    private int uploadConcurrency;
+
+    @Value("${loadtest.upload.image-size}")
+    private int uploadImageSize;
+
+    @Value("${loadtest.persons}")
+    private int persons;
+
+    @Value("${loadtest.match.requests}")
+    private int matchRequests;
+
+    @Value("${loadtest.match.concurrency}")
+    private int matchConcurrency;
+
+    // Share of guest selfies seen before, which the match cache can answer
+    @Value("${loadtest.match.repeat-percent}")
+    private int repeatPercent;
+
+    @Value("${loadtest.large-event.photos}")
+    private int largeEventPhotos;
+
+    @Value("${loadtest.large-event.persons}")
+    private int largeEventPersons;
+
+    @Value("${loadtest.drain-timeout-seconds}")
+    private long drainTimeoutSeconds;
+
+    private final LoadReport report = new LoadReport();
+    private final Set<Long> uploadedPersons = ConcurrentHashMap.newKeySet();
+    private String adminToken;
+    private String photographerToken;
+    private Integer photographerId;
+    private Integer uploadEventId;
+
+    @BeforeAll
+    void setUp() {
+        adminToken = login("admin@eventphoto.com", "admin123").getToken();
+        LoginResponse photographer = login("photographer@eventphoto.com", "photo123");
+        photographerToken = photographer.getToken();
+        photographerId = photographer.getUserId();
+        uploadEventId = createEvent("Load test uploads");
+        report.add(String.format("Upload event %d: %d photos of %d people; %d guest requests at %d concurrent",
+                uploadEventId, uploadPhotos, persons, matchRequests, matchConcurrency));
+    }
+
+    @AfterAll
+    void writeReport() throws Exception {
+        report.write();
+    }
+
+    @Test
+    @Order(1)
+    void uploadBurst() {
+        AtomicInteger next = new AtomicInteger();
+        LatencyRecorder uploads = run("photographer upload", uploadPhotos, uploadConcurrency, i -> {
+            int n = next.getAndIncrement();
+            Random random = new Random(n);
+            long[] people = new long[1 + random.nextInt(3)];
+            for (int f = 0; f < people.length; f++) {
+                people[f] = 1 + random.nextInt(persons);
+            }
+            byte[] image = SyntheticFaces.image(uploadImageSize, uploadImageSize * 3 / 4, n, people);
+            ResponseEntity<String> response = rest.exchange("/photographer/events/" + uploadEventId + "/photos",
+                    HttpMethod.POST, multipart(photographerToken, image, "photo-" + n + ".jpg"), String.class);
+            if (response.getStatusCode().value() != 201) {
+                return false;
+            }
+            for (long person : people) {
+                uploadedPersons.add(person);
+            }
+            return true;
+        });
+        report.add(uploads);
+        assertEquals(0, uploads.errors());
+
+        long drainStart = System.nanoTime();
+        awaitIndexed(uploadEventId);
+        double drainSeconds = (System.nanoTime() - drainStart) / 1e9;
+        report.add(String.format("indexing drain after burst          %.1f s (%.1f photos/s end to end)",
+                drainSeconds, uploadPhotos / (uploads.seconds() + drainSeconds)));
+    }
+
+    @Test
+    @Order(2)
+    void guestMatchStorm() {
+        matchStorm("guest match storm", uploadEventId, List.copyOf(uploadedPersons));
+    }
+
+    @Test
+    @Order(3)
+    void largeEventMatch() {
+        Integer eventId = createEvent("Load test large event");
+        long start = System.nanoTime();
+        new SyntheticEventGenerator(jdbcTemplate, bulkRepository)
+                .generate(eventId, photographerId, largeEventPhotos, largeEventPersons, 3, eventId);
+        report.add(String.format("generated event %d: %d photos in %.1f s", eventId, largeEventPhotos,
+                (System.nanoTime() - start) / 1e9));
+
+        // The first request restores the index from face_embeddings and builds it in memory
+        LatencyRecorder cold = run("large event cold match", 1, 1, i -> match(eventId, 1, 0) != null);
+        report.add(cold);
+
+        List<Long> people = new ArrayList<>();
+        for (long person = 1; person <= largeEventPersons; person++) {
+            people.add(person);
+        }
+        matchStorm("large event match storm", eventId, people);
+    }
+
+    @Test
+    @Order(4)
+    void reindex() {
+        LatencyRecorder restore = run("reindex from stored embeddings", 1, 1,
+                i -> reindex(uploadEventId, false));
+        report.add(restore);
+
+        LatencyRecorder recompute = run("reindex recompute (request)", 1, 1, i -> reindex(uploadEventId, true));
+        report.add(recompute);
+        long drainStart = System.nanoTime();
+        awaitIndexed(uploadEventId);
+        double drainSeconds = (System.nanoTime() - drainStart) / 1e9;
+        report.add(String.format("reindex recompute drain             %.1f s (%.1f photos/s)", drainSeconds,
+                uploadPhotos / drainSeconds));
+    }
+
+    private void matchStorm(String name, Integer eventId, List<Long> people) {
+        Random random = new Random(eventId);
+        AtomicInteger misses = new AtomicInteger();
+        int repeatedSelfies = Math.max(1, matchRequests * (100 - repeatPercent) / 100 / 10);
+        LatencyRecorder storm = run(name, matchRequests, matchConcurrency, i -> {
+            long person;
+            long seed;
+            synchronized (random) {
+                person = people.get(random.nextInt(people.size()));
+                // Repeats reuse one of a few selfies per person; the rest are new pictures
+                seed = random.nextInt(100) < repeatPercent ? person * 1000 + random.nextInt(repeatedSelfies)
+                        : random.nextLong();
+            }
+            MatchPageResponse page = match(eventId, person, seed);
+            if (page == null) {
+                return false;
+            }
+            if (page.getTotal() == 0) {
+                misses.incrementAndGet();
+            }
+            return true;
+        });
+        report.add(storm);
+        report.add(String.format("%-32s %d of %d guests found no photo", name + " misses", misses.get(),
+                storm.count()));
+        assertTrue(storm.errors() == 0, name + " had errors");
+    }
+
+    private MatchPageResponse match(Integer eventId, long person, long seed) {
+        byte[] selfie = SyntheticFaces.image(64, 64, seed, person);
+        ResponseEntity<MatchPageResponse> response = rest.exchange("/guest/events/" + eventId + "/matches",
+                HttpMethod.POST, multipart(null, selfie, "selfie.jpg"), MatchPageResponse.class);
+        return response.getStatusCode().is2xxSuccessful() ? response.getBody() : null;
+    }
+
+    private boolean reindex(Integer eventId, boolean recompute) {
+        ResponseEntity<String> response = rest.exchange(
+                "/admin/events/" + eventId + "/reindex?recompute=" + recompute, HttpMethod.POST,
+                new HttpEntity<>(auth(adminToken)), String.class);
+        report.add("  " + response.getBody());
+        return response.getStatusCode().is2xxSuccessful();
+    }
+
+    /**
+     * Runs {@code requests} calls on {@code concurrency} threads; a call returning false or throwing is an error.
+     */
+    private LatencyRecorder run(String name, int requests, int concurrency, IntPredicate call) {
+        LatencyRecorder recorder = new LatencyRecorder(name);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        recorder.start();
+        for (int i = 0; i < requests; i++) {
+            int request = i;
+            pool.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    if (call.test(request)) {
+                        recorder.record(System.nanoTime() - start);
+                    } else {
+                        recorder.error();
+                    }
+                } catch (RuntimeException e) {
+                    recorder.error();
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recorder.finish();
+        return recorder;
+    }
+
+    private void awaitIndexed(Integer eventId) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(drainTimeoutSeconds);
+        while (indexingJobRepository.countByStatus(IndexingJob.Status.PENDING) > 0
+                || photoRepository.findByEventId(eventId).stream().anyMatch(photo -> !photo.getIndexed())) {
+            assertTrue(System.currentTimeMillis() < deadline, "Indexing did not drain in time");
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private LoginResponse login(String email, String password) {
+        LoginRequest request = new LoginRequest();
+        request.setEmail(email);
+        request.setPassword(password);
+        ResponseEntity<LoginResponse> response = rest.postForEntity("/auth/login", request, LoginResponse.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful(), "Login failed for " + email);
+        return response.getBody();
+    }
+
+    private Integer createEvent(String name) {
+        CreateEventRequest request = new CreateEventRequest();
+        request.setName(name);
+        request.setDate(LocalDate.now());
+        request.setLocation("Load test");
+        Integer eventId = rest.exchange("/admin/events", HttpMethod.POST, new HttpEntity<>(request, auth(adminToken)),
+                EventResponse.class).getBody().getId();
+        rest.exchange("/admin/events/" + eventId + "/photographers/" + photographerId, HttpMethod.POST,
+                new HttpEntity<>(auth(adminToken)), Void.class);
+        return eventId;
+    }
+
+    private static HttpHeaders auth(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null) {
+            headers.setBearerAuth(token);
+        }
+        return headers;
+    }
+
+    private static HttpEntity<MultiValueMap<String, Object>> multipart(String token, byte[] image, String filename) {
+        HttpHeaders headers = auth(token);
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+        return new HttpEntity<>(body, headers);
+    }
+}
@@ -0,0 +1,79 @@
+package com.eventphoto.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latencies and outcomes of one load scenario.
+ */
+class LatencyRecorder {
+
+    private final String name;
+    private final AtomicInteger errors = new AtomicInteger();
+    private long[] nanos = new long[1024];
+    private int count;
+    private long startedAt;
+    private long finishedAt;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void start() {
+        startedAt = System.nanoTime();
+    }
+
+    void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    synchronized void record(long elapsedNanos) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = elapsedNanos;
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    int errors() {
+        return errors.get();
+    }
+
+    double seconds() {
+        return (finishedAt - startedAt) / 1e9;
+    }
+
+    double throughput() {
+        return count() / Math.max(seconds(), 1e-9);
+    }
+
+    /**
+     * Latency in milliseconds at the given percentile (0-100), nearest rank.
+     */
+    synchronized double percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.min(count, Math.max(rank, 1)) - 1] / 1e6;
+    }
+
+    String summary() {
+        return String.format("%-32s %7d ok %5d err %8.1f/s  p50 %8.1f ms  p90 %8.1f ms  p99 %8.1f ms  max %8.1f ms",
+                name, count(), errors(), throughput(), percentile(50), percentile(90), percentile(99),
+                percentile(100));
+    }
+}
@@ -0,0 +1,32 @@
+package com.eventphoto.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the lines of a load-test run; printed as it goes and written to target/load-test-report.txt at the end.
+ */
+class LoadReport {
+
+    private final List<String> lines = new ArrayList<>();
+
+    synchronized void add(LatencyRecorder recorder) {
+        add(recorder.summary());
+    }
+
+    synchronized void add(String line) {
+        System.out.println("[load-test] " + line);
+        lines.add(line);
+    }
+
+    synchronized void write() throws IOException {
+        Path report = Paths.get("target", "load-test-report.txt");
+        Files.createDirectories(report.getParent());
+        Files.write(report, lines);
+        System.out.println("[load-test] Report written to " + report.toAbsolutePath());
+    }
+}
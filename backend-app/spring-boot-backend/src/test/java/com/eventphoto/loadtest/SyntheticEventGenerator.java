@@ -0,0 +1,92 @@
+package com.eventphoto.loadtest;
+
+import com.eventphoto.fake.SyntheticFaces;
+import com.eventphoto.repository.FaceEmbeddingBulkRepository;
+import com.eventphoto.repository.FaceEmbeddingBulkRepository.PhotoFaces;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills an event with already-indexed synthetic photos straight through JDBC, far faster than uploading them. Each
+ * photo's Drive file id names its people, so the local Drive stand-in can still serve it and the fake face service
+ * can re-index it.
+ */
+class SyntheticEventGenerator {
+
+    private static final int CHUNK = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FaceEmbeddingBulkRepository bulkRepository;
+
+    SyntheticEventGenerator(JdbcTemplate jdbcTemplate, FaceEmbeddingBulkRepository bulkRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bulkRepository = bulkRepository;
+    }
+
+    /**
+     * Adds {@code photos} photos showing up to {@code maxFaces} of persons {@code 1..persons} and stores their
+     * embeddings.
+     */
+    void generate(Integer eventId, Integer uploadedBy, int photos, int persons, int maxFaces, long seed) {
+        Random random = new Random(seed);
+        for (int done = 0; done < photos; done += CHUNK) {
+            int size = Math.min(CHUNK, photos - done);
+            List<Object[]> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                long[] people = new long[random.nextInt(maxFaces + 1)];
+                for (int f = 0; f < people.length; f++) {
+                    people[f] = 1 + random.nextInt(persons);
+                }
+                rows.add(new Object[]{eventId, SyntheticFaces.driveFileId(people), uploadedBy});
+            }
+            long firstId = insertPhotos(rows);
+
+            List<PhotoFaces> faces = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int photoId = (int) (firstId + i);
+                long[] people = SyntheticFaces.personsOfDriveFile((String) rows.get(i)[1]);
+                List<float[]> encodings = new ArrayList<>(people.length);
+                List<int[]> locations = new ArrayList<>(people.length);
+                for (int f = 0; f < people.length; f++) {
+                    encodings.add(SyntheticFaces.embedding(people[f], photoId * 31L + f));
+                    locations.add(new int[]{0, 0, 0, 0});
+                }
+                faces.add(new PhotoFaces(photoId, encodings, locations));
+            }
+            bulkRepository.replacePhotoFaces(eventId, faces);
+        }
+    }
+
+    // One multi-row insert per chunk; InnoDB gives the rows of a single simple insert consecutive ids
+    private long insertPhotos(List<Object[]> rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO photos (event_id, drive_file_id, uploaded_by, indexed, created_at, updated_at) VALUES ");
+        List<Object> args = new ArrayList<>(rows.size() * 3);
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ",").append("(?, ?, ?, TRUE, NOW(), NOW())");
+            for (Object value : rows.get(i)) {
+                args.add(value);
+            }
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                statement.executeUpdate();
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT LAST_INSERT_ID()")) {
+                result.next();
+                return result.getLong(1);
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.eventphoto.resilience;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("face", 10, 4, 50, 60_000, 2);
+        fail(breaker, 3);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensAtFailureRateAndRejectsCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("face", 10, 4, 50, 60_000, 2);
+        succeed(breaker, 2);
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail(breaker, 1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        assertFalse(breaker.tryAcquire());
+        assertTrue(breaker.remainingOpenMs() > 0);
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("face", 4, 4, 50, 60_000, 2);
+        fail(breaker, 1);
+        succeed(breaker, 3);
+        // The failure drops out as the fourth success comes in, leaving one failure in four
+        succeed(breaker, 1);
+        fail(breaker, 1);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenTrialsCloseTheBreaker() {
+        CircuitBreaker breaker = opened(2);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedTrialReopensTheBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("face", 10, 2, 50, 60_000, 2);
+        fail(breaker, 2);
+        // Skips the open period
+        ReflectionTestUtils.setField(breaker, "openUntil", 0L);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.record(true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedTrialCanBeTakenAgain() {
+        CircuitBreaker breaker = opened(1);
+
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.isCallPermitted());
+        breaker.release();
+
+        assertTrue(breaker.isCallPermitted());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void callFinishingAfterTheBreakerOpenedIsIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker("face", 10, 2, 50, 60_000, 1);
+        fail(breaker, 2);
+        breaker.record(false);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    // Opens with no wait, so the next call is a half-open trial
+    private static CircuitBreaker opened(int halfOpenCalls) {
+        CircuitBreaker breaker = new CircuitBreaker("face", 10, 2, 50, 0, halfOpenCalls);
+        fail(breaker, 2);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.record(true);
+        }
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.record(false);
+        }
+    }
+}
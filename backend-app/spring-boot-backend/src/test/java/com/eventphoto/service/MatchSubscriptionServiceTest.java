@@ -0,0 +1,89 @@
+package com.eventphoto.service;
+
+import com.eventphoto.face.EventFaceIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MatchSubscriptionServiceTest {
+
+    private static final byte[] SELFIE = {1, 2, 3};
+    private static final byte[] NO_FACE = {4};
+
+    @Mock
+    private FaceRecognitionService faceRecognitionService;
+    @Mock
+    private PhotoService photoService;
+
+    @InjectMocks
+    private MatchSubscriptionService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "maxPerEvent", 2);
+        ReflectionTestUtils.setField(service, "maxTotal", 3);
+    }
+
+    @Test
+    void eventLimitIsReportedAsCapacity() {
+        when(faceRecognitionService.embedFace(SELFIE)).thenReturn(new float[EventFaceIndex.DIMENSIONS]);
+        service.subscribe(1, SELFIE);
+        service.subscribe(1, SELFIE);
+
+        SubscriptionCapacityException e = assertThrows(SubscriptionCapacityException.class,
+                () -> service.subscribe(1, SELFIE));
+        assertTrue(e.getRetryAfterSeconds() > 0);
+        // A rejected subscription does not count against the node
+        assertNotNull(service.subscribe(2, SELFIE));
+    }
+
+    @Test
+    void nodeLimitSpansEventsAndFreesOnUnsubscribe() {
+        when(faceRecognitionService.embedFace(SELFIE)).thenReturn(new float[EventFaceIndex.DIMENSIONS]);
+        String first = service.subscribe(1, SELFIE);
+        service.subscribe(2, SELFIE);
+        service.subscribe(3, SELFIE);
+
+        assertThrows(SubscriptionCapacityException.class, () -> service.subscribe(4, SELFIE));
+        assertTrue(service.unsubscribe(1, first));
+        assertFalse(service.unsubscribe(1, first));
+        assertNotNull(service.subscribe(4, SELFIE));
+    }
+
+    @Test
+    void fullNodeSkipsTheFaceService() {
+        when(faceRecognitionService.embedFace(SELFIE)).thenReturn(new float[EventFaceIndex.DIMENSIONS]);
+        for (int event = 1; event <= 3; event++) {
+            service.subscribe(event, SELFIE);
+        }
+
+        assertThrows(SubscriptionCapacityException.class, () -> service.subscribe(4, NO_FACE));
+        verify(faceRecognitionService, never()).embedFace(NO_FACE);
+    }
+
+    @Test
+    void selfieWithoutFaceHoldsNoSlot() {
+        when(faceRecognitionService.embedFace(any())).thenReturn(null);
+        for (int i = 0; i < 5; i++) {
+            assertNull(service.subscribe(1, NO_FACE));
+        }
+        when(faceRecognitionService.embedFace(SELFIE)).thenReturn(new float[EventFaceIndex.DIMENSIONS]);
+        assertEquals(36, service.subscribe(1, SELFIE).length());
+    }
+}
@@ -0,0 +1,132 @@
+package com.eventphoto.service;
+
+import com.eventphoto.dto.PhotoPageResponse;
+import com.eventphoto.dto.PhotoResponse;
+import com.eventphoto.entity.Event;
+import com.eventphoto.entity.Photo;
+import com.eventphoto.entity.User;
+import com.eventphoto.repository.EventRepository;
+import com.eventphoto.repository.PhotoRepository;
+import com.eventphoto.repository.UserRepository;
+import com.eventphoto.storage.PhotoStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Keyset paging of an event's photos; the repository queries themselves order by (createdAt, id).
+ */
+@ExtendWith(MockitoExtension.class)
+class PhotoServiceTest {
+
+    // Sub-second part included, as MySQL DATETIME(6) keeps it and the cursor must too
+    private static final LocalDateTime UPLOADED = LocalDateTime.of(2024, 3, 9, 18, 30, 5, 123_456_000);
+
+    @Mock
+    private PhotoRepository photoRepository;
+    @Mock
+    private EventRepository eventRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private PhotoStorage photoStorage;
+    @Mock
+    private IndexingQueue indexingQueue;
+    @Mock
+    private PhotoDerivativeService photoDerivativeService;
+    @Mock
+    private DriveUploadPool driveUploadPool;
+    @Mock
+    private UploadSpool uploadSpool;
+    @Mock
+    private PhotoDedupService photoDedupService;
+
+    @InjectMocks
+    private PhotoService photoService;
+
+    @Test
+    void nextPageStartsAfterTheLastPhotoOfTheSameSecond() {
+        // One burst: every photo has the same timestamp, so only the id orders them
+        when(photoRepository.findFirstPageByEventId(1, PageRequest.of(0, 3)))
+                .thenReturn(List.of(photo(10, UPLOADED), photo(11, UPLOADED), photo(12, UPLOADED)));
+        PhotoPageResponse first = photoService.getEventPhotoPage(1, null, 2);
+
+        assertEquals(List.of(10, 11), ids(first));
+        assertNotNull(first.getNextCursor());
+
+        when(photoRepository.findPageByEventIdAfter(1, UPLOADED, 11, PageRequest.of(0, 3)))
+                .thenReturn(List.of(photo(12, UPLOADED), photo(13, UPLOADED.plusNanos(1_000))));
+        PhotoPageResponse second = photoService.getEventPhotoPage(1, first.getNextCursor(), 2);
+
+        assertEquals(List.of(12, 13), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void cursorRoundTripsCreatedAtAndId() {
+        LocalDateTime createdAt = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999);
+        when(photoRepository.findFirstPageByEventId(1, PageRequest.of(0, 2)))
+                .thenReturn(List.of(photo(Integer.MAX_VALUE, createdAt), photo(1, createdAt)));
+        String cursor = photoService.getEventPhotoPage(1, null, 1).getNextCursor();
+
+        ByteBuffer decoded = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+        assertEquals(16, decoded.remaining());
+        assertEquals(-1, decoded.getLong());
+        assertEquals(999_999_999, decoded.getInt());
+        assertEquals(Integer.MAX_VALUE, decoded.getInt());
+    }
+
+    @Test
+    void pageSizeIsCapped() {
+        when(photoRepository.findFirstPageByEventId(1, PageRequest.of(0, 201))).thenReturn(List.of());
+        assertEquals(List.of(), photoService.getEventPhotoPage(1, null, 10_000).getItems());
+
+        when(photoRepository.findFirstPageByEventId(1, PageRequest.of(0, 2))).thenReturn(List.of());
+        assertEquals(List.of(), photoService.getEventPhotoPage(1, "", 0).getItems());
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        String tooShort = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[12]);
+        String outOfRange = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ByteBuffer.allocate(16).putLong(Long.MAX_VALUE).putInt(0).putInt(1).array());
+
+        assertThrows(IllegalArgumentException.class, () -> photoService.getEventPhotoPage(1, tooShort, 10));
+        assertThrows(IllegalArgumentException.class, () -> photoService.getEventPhotoPage(1, outOfRange, 10));
+        assertThrows(IllegalArgumentException.class, () -> photoService.getEventPhotoPage(1, "not*base64", 10));
+        verifyNoInteractions(photoRepository);
+    }
+
+    private static Photo photo(int id, LocalDateTime createdAt) {
+        Event event = new Event();
+        event.setId(1);
+        User photographer = new User();
+        photographer.setName("Asha");
+        Photo photo = new Photo();
+        photo.setId(id);
+        photo.setEvent(event);
+        photo.setUploadedBy(photographer);
+        photo.setDriveFileId("file" + id);
+        photo.setCreatedAt(createdAt);
+        return photo;
+    }
+
+    private static List<Integer> ids(PhotoPageResponse page) {
+        return page.getItems().stream().map(PhotoResponse::getId).toList();
+    }
+}
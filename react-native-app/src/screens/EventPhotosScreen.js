@@ -12,7 +12,7 @@ import {
 } from 'react-native';
 import { SafeAreaView } from 'react-native-safe-area-context';
 import { MaterialCommunityIcons } from '@expo/vector-icons';
-import { useQuery } from '@tanstack/react-query';
+import { useInfiniteQuery } from '@tanstack/react-query';
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import * as FileSystem from 'expo-file-system/legacy';
 import * as MediaLibrary from 'expo-media-library';
@@ -21,6 +21,7 @@ import { API_BASE_URL } from '../config/api';
 const { width } = Dimensions.get('window');
 const COLUMN_COUNT = 3;
 const IMAGE_SIZE = width / COLUMN_COUNT;
+const PAGE_SIZE = 100;
 
 export default function EventPhotosScreen({ route, navigation }) {
     const { eventId, eventName } = route.params;
@@ -113,12 +114,23 @@ export default function EventPhotosScreen({ route, navigation }) {
         setSelectedIds(newSelected);
     };
 
-    const { data: photos, isLoading, error, refetch } = useQuery({
+    const {
+        data,
+        isLoading,
+        error,
+        refetch,
+        fetchNextPage,
+        hasNextPage,
+        isFetchingNextPage,
+    } = useInfiniteQuery({
         queryKey: ['eventPhotos', eventId],
-        queryFn: async () => {
+        initialPageParam: null,
+        queryFn: async ({ pageParam }) => {
             console.log(`Fetching photos for eventId: ${eventId}`);
             const token = await AsyncStorage.getItem('authToken');
-            const response = await fetch(`${API_BASE_URL}/admin/events/${eventId}/photos`, {
+            // Asking for a limit selects the paged response; without it the server returns every photo at once
+            const query = `?limit=${PAGE_SIZE}` + (pageParam ? `&cursor=${encodeURIComponent(pageParam)}` : '');
+            const response = await fetch(`${API_BASE_URL}/admin/events/${eventId}/photos${query}`, {
                 headers: {
                     'Authorization': `Bearer ${token}`,
                 },
@@ -130,10 +142,13 @@ export default function EventPhotosScreen({ route, navigation }) {
                 throw new Error('Failed to fetch photos');
             }
             const result = await response.json();
-            console.log(`Fetched ${result.length} photos for event ${eventId}`);
+            console.log(`Fetched ${result.items.length} photos for event ${eventId}`);
             return result;
         },
+        // The server pages by upload order; a null cursor marks the last page
+        getNextPageParam: (lastPage) => lastPage.nextCursor ?? undefined,
     });
+    const photos = data ? data.pages.flatMap(page => page.items) : [];
 
     if (isLoading) {
         return (
@@ -226,6 +241,9 @@ export default function EventPhotosScreen({ route, navigation }) {
                     contentContainerStyle={styles.grid}
                     onRefresh={() => refetch()}
                     refreshing={isLoading}
+                    onEndReached={() => hasNextPage && !isFetchingNextPage && fetchNextPage()}
+                    onEndReachedThreshold={0.5}
+                    ListFooterComponent={isFetchingNextPage ? <ActivityIndicator size="small" color="#667eea" /> : null}
                 />
             )}
 